@@ -0,0 +1,117 @@
+package com.github.florent37.rxgps;
+
+import android.Manifest;
+
+import com.google.android.gms.location.LocationRequest;
+
+/*
+ * Reusable description of a location request: its priority plus any of the interval,
+ * fastest interval, smallest displacement, max wait time and number of updates. Profiles
+ * are immutable, every with...() method returns a modified copy, so a profile can be kept
+ * in a constant and shared between calls. Parameters left unset keep the LocationRequest
+ * defaults.
+ */
+public final class LocationProfile {
+
+    private static final long DEFAULT_INTERVAL = 5000l;
+    private static final int NOT_SET = -1;
+
+    private final int priority;
+    private final long interval;
+    private final long fastestInterval;
+    private final float smallestDisplacement;
+    private final long maxWaitTime;
+    private final int numUpdates;
+
+    private LocationProfile(int priority, long interval, long fastestInterval, float smallestDisplacement, long maxWaitTime, int numUpdates) {
+        this.priority = priority;
+        this.interval = interval;
+        this.fastestInterval = fastestInterval;
+        this.smallestDisplacement = smallestDisplacement;
+        this.maxWaitTime = maxWaitTime;
+        this.numUpdates = numUpdates;
+    }
+
+    private static LocationProfile create(int priority) {
+        return new LocationProfile(priority, DEFAULT_INTERVAL, NOT_SET, NOT_SET, NOT_SET, NOT_SET);
+    }
+
+    public static LocationProfile highAccuracy() {
+        return create(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    }
+
+    public static LocationProfile balancedPowerAccuracy() {
+        return create(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY);
+    }
+
+    public static LocationProfile lowPower() {
+        return create(LocationRequest.PRIORITY_LOW_POWER);
+    }
+
+    public static LocationProfile noPower() {
+        return create(LocationRequest.PRIORITY_NO_POWER);
+    }
+
+    public LocationProfile withInterval(long interval) {
+        return new LocationProfile(priority, interval, fastestInterval, smallestDisplacement, maxWaitTime, numUpdates);
+    }
+
+    /* Fastest rate locations are delivered at, including those requested by other apps. */
+    public LocationProfile withFastestInterval(long fastestInterval) {
+        return new LocationProfile(priority, interval, fastestInterval, smallestDisplacement, maxWaitTime, numUpdates);
+    }
+
+    /* Locations closer than this to the previous one are not delivered at all. */
+    public LocationProfile withSmallestDisplacement(float smallestDisplacement) {
+        return new LocationProfile(priority, interval, fastestInterval, smallestDisplacement, maxWaitTime, numUpdates);
+    }
+
+    /* Lets the provider batch locations and deliver them at most this late. */
+    public LocationProfile withMaxWaitTime(long maxWaitTime) {
+        return new LocationProfile(priority, interval, fastestInterval, smallestDisplacement, maxWaitTime, numUpdates);
+    }
+
+    /* The updates complete after this many locations, see RxGps.location(LocationProfile). */
+    public LocationProfile withNumUpdates(int numUpdates) {
+        return new LocationProfile(priority, interval, fastestInterval, smallestDisplacement, maxWaitTime, numUpdates);
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /* Creates a new LocationRequest on every call, as LocationRequest is mutable. */
+    public LocationRequest toLocationRequest() {
+        final LocationRequest locationRequest = LocationRequest.create()
+                .setPriority(priority)
+                .setInterval(interval);
+
+        if (fastestInterval != NOT_SET) {
+            locationRequest.setFastestInterval(fastestInterval);
+        }
+        if (smallestDisplacement != NOT_SET) {
+            locationRequest.setSmallestDisplacement(smallestDisplacement);
+        }
+        if (maxWaitTime != NOT_SET) {
+            locationRequest.setMaxWaitTime(maxWaitTime);
+        }
+        if (numUpdates != NOT_SET) {
+            locationRequest.setNumUpdates(numUpdates);
+        }
+
+        return locationRequest;
+    }
+
+    // Number of locations after which the updates complete, 0 or less for no limit
+    int getNumUpdates() {
+        return numUpdates;
+    }
+
+    String getPermission() {
+        return priority == LocationRequest.PRIORITY_HIGH_ACCURACY ? Manifest.permission.ACCESS_FINE_LOCATION : Manifest.permission.ACCESS_COARSE_LOCATION;
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.florent37.rxgps;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Process-wide memo of the RxGps preflight: whether Play services are available, and which
+ * permissions have been granted. Availability is evaluated again when the Play services
+ * package changes, and the granted permissions are checked again whenever an Activity
+ * resumes, as they may have been revoked from the settings meanwhile.
+ */
+class PreflightCache {
+
+    private static volatile PreflightCache instance;
+
+    private final Context context;
+    private final Set<String> grantedPermissions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile Boolean playServicesAvailable;
+
+    private PreflightCache(Context context) {
+        this.context = context;
+    }
+
+    static PreflightCache get(Context context) {
+        if (instance == null) {
+            synchronized (PreflightCache.class) {
+                if (instance == null) {
+                    PreflightCache preflightCache = new PreflightCache(context.getApplicationContext());
+                    preflightCache.registerInvalidation();
+                    instance = preflightCache;
+                }
+            }
+        }
+        return instance;
+    }
+
+    boolean isPlayServicesAvailable() {
+        Boolean available = playServicesAvailable;
+
+        if (available == null) {
+            available = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context) == ConnectionResult.SUCCESS;
+            playServicesAvailable = available;
+        }
+
+        return available;
+    }
+
+    boolean areGranted(String... permissions) {
+        for (String permission : permissions) {
+            if (!grantedPermissions.contains(permission)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Checks the permissions without any UI, remembering them if they are all granted
+    boolean checkGranted(String... permissions) {
+        for (String permission : permissions) {
+            if (context.checkPermission(permission, Process.myPid(), Process.myUid()) != PackageManager.PERMISSION_GRANTED) {
+                return false;
+            }
+        }
+        setGranted(permissions);
+        return true;
+    }
+
+    void setGranted(String... permissions) {
+        Collections.addAll(grantedPermissions, permissions);
+    }
+
+    void invalidatePlayServices() {
+        playServicesAvailable = null;
+    }
+
+    void revalidatePermissions() {
+        for (String permission : grantedPermissions) {
+            if (context.checkPermission(permission, Process.myPid(), Process.myUid()) != PackageManager.PERMISSION_GRANTED) {
+                grantedPermissions.remove(permission);
+            }
+        }
+    }
+
+    private void registerInvalidation() {
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                if (data != null && GoogleApiAvailability.GOOGLE_PLAY_SERVICES_PACKAGE.equals(data.getSchemeSpecificPart())) {
+                    invalidatePlayServices();
+                }
+            }
+        }, packageFilter);
+
+        if (context instanceof Application) {
+            ((Application) context).registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+                @Override
+                public void onActivityResumed(Activity activity) {
+                    revalidatePermissions();
+                }
+
+                @Override
+                public void onActivityCreated(Activity activity, Bundle savedInstanceState) { }
+
+                @Override
+                public void onActivityStarted(Activity activity) { }
+
+                @Override
+                public void onActivityPaused(Activity activity) { }
+
+                @Override
+                public void onActivityStopped(Activity activity) { }
+
+                @Override
+                public void onActivitySaveInstanceState(Activity activity, Bundle outState) { }
+
+                @Override
+                public void onActivityDestroyed(Activity activity) { }
+            });
+        }
+    }
+}
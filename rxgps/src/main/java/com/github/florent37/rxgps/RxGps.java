@@ -2,45 +2,83 @@ package com.github.florent37.rxgps;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.Context;
 import android.location.Address;
 import android.location.Location;
 
+import com.patloew.rxlocation.LocationOverflowPolicy;
+import com.patloew.rxlocation.ReverseGeocodingTransformer;
 import com.patloew.rxlocation.RxLocation;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.location.LocationRequest;
 import com.tbruyelle.rxpermissions2.RxPermissions;
 
-import java.lang.ref.WeakReference;
+import org.reactivestreams.Publisher;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.MaybeSource;
 import io.reactivex.Observable;
-import io.reactivex.ObservableEmitter;
-import io.reactivex.ObservableOnSubscribe;
 import io.reactivex.ObservableSource;
 import io.reactivex.SingleSource;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
 
 @SuppressWarnings("MissingPermission")
 public class RxGps {
 
-    private final WeakReference<Activity> activityReference;
+    private static final long CURRENT_LOCATION_INTERVAL = 1000;
+    // Targets at least this loose are met by the balanced power provider, with coarse permission
+    private static final float COARSE_LOCATION_ACCURACY = 100f;
+
+    private static RxLocation sharedRxLocation;
+
     private final RxLocation rxLocation;
     private final RxPermissions rxPermissions;
+    private final PreflightCache preflightCache;
+    private final Map<String, Observable<Boolean>> pendingPermissionRequests = new HashMap<>();
     private long interval = 5000l;
 
     public RxGps(RxLocation rxLocation, Activity activity) {
         this.rxLocation = rxLocation;
         this.rxPermissions = new RxPermissions(activity);
-        this.activityReference = new WeakReference<Activity>(activity);
+        this.preflightCache = PreflightCache.get(activity);
     }
 
     public RxGps(Activity activity) {
-        this(new RxLocation(activity), activity);
-        this.rxLocation.setDefaultTimeout(15, TimeUnit.SECONDS);
+        this(sharedRxLocation(activity), activity);
+    }
+
+    private RxGps(RxLocation rxLocation, Context context) {
+        this.rxLocation = rxLocation;
+        this.rxPermissions = null;
+        this.preflightCache = PreflightCache.get(context);
+    }
+
+    /* RxGps for Services and jobs, without an Activity. Permissions are only checked, never
+     * requested: a stream fails right away with a PermissionException when one is missing.
+     */
+    public static RxGps headless(Context context) {
+        return new RxGps(sharedRxLocation(context), context);
+    }
+
+    // One RxLocation per process, so all the streams share its connection and caches
+    private static synchronized RxLocation sharedRxLocation(Context context) {
+        if (sharedRxLocation == null) {
+            sharedRxLocation = new RxLocation(context.getApplicationContext());
+            sharedRxLocation.setDefaultTimeout(15, TimeUnit.SECONDS);
+            sharedRxLocation.geocoding().enableCache(256, 10, TimeUnit.MINUTES, 25f);
+        }
+        return sharedRxLocation;
     }
 
     public RxGps setInterval(long interval) {
@@ -64,8 +102,19 @@ public class RxGps {
                 });
     }
 
-    private Observable<Boolean> request(String... permissions) {
-        return rxPermissions.request(permissions)
+    private Observable<Boolean> request(final String... permissions) {
+        return Observable.defer(new Callable<ObservableSource<Boolean>>() {
+            @Override
+            public ObservableSource<Boolean> call() throws Exception {
+                if (preflightCache.areGranted(permissions)) {
+                    return Observable.just(true);
+                }
+                if (rxPermissions == null) {
+                    return Observable.just(preflightCache.checkGranted(permissions));
+                }
+                return sharedPermissionRequest(permissions);
+            }
+        })
                 .flatMap(new Function<Boolean, ObservableSource<Boolean>>() {
                     @Override
                     public ObservableSource<Boolean> apply(@NonNull Boolean permit) throws Exception {
@@ -77,34 +126,93 @@ public class RxGps {
                 });
     }
 
+    // Concurrent requests of the same permissions share a single RxPermissions request
+    private synchronized Observable<Boolean> sharedPermissionRequest(final String... permissions) {
+        final String[] sortedPermissions = permissions.clone();
+        Arrays.sort(sortedPermissions);
+        final String key = Arrays.toString(sortedPermissions);
+
+        Observable<Boolean> pending = pendingPermissionRequests.get(key);
+
+        if (pending == null) {
+            //noinspection unchecked
+            final Observable<Boolean>[] holder = new Observable[1];
+
+            pending = rxPermissions.request(permissions)
+                    .doOnNext(new Consumer<Boolean>() {
+                        @Override
+                        public void accept(Boolean granted) throws Exception {
+                            if (granted) {
+                                preflightCache.setGranted(permissions);
+                            }
+                        }
+                    })
+                    .doFinally(new Action() {
+                        @Override
+                        public void run() throws Exception {
+                            removePendingPermissionRequest(key, holder[0]);
+                        }
+                    })
+                    .replay(1)
+                    .refCount();
+
+            holder[0] = pending;
+            pendingPermissionRequests.put(key, pending);
+        }
+
+        return pending;
+    }
+
+    private synchronized void removePendingPermissionRequest(String key, Observable<Boolean> pending) {
+        if (pendingPermissionRequests.get(key) == pending) {
+            pendingPermissionRequests.remove(key);
+        }
+    }
+
+    /* The locations of the profile. With withNumUpdates(), the Observable completes after that
+     * many locations, as the Location APIs stop delivering them without ever completing.
+     */
+    public Observable<Location> location(LocationProfile profile) {
+        final Observable<Location> locations = location(profile.toLocationRequest(), profile.getPermission());
+        return profile.getNumUpdates() > 0 ? locations.take(profile.getNumUpdates()) : locations;
+    }
+
+    /* Bounded variant of location(LocationProfile): locations a slow subscriber has not
+     * requested yet are held according to the overflow policy instead of piling up, for
+     * instance in the queue of an Observable observeOn().
+     */
+    public Flowable<Location> location(final LocationProfile profile, final LocationOverflowPolicy overflowPolicy) {
+        return checkPlayServicesAvailable()
+                .flatMap(new Function<Boolean, ObservableSource<Boolean>>() {
+                    @Override
+                    public ObservableSource<Boolean> apply(@NonNull Boolean aBoolean) throws Exception {
+                        return request(profile.getPermission());
+                    }
+                })
+                .ignoreElements()
+                .andThen(Flowable.defer(new Callable<Publisher<Location>>() {
+                    @Override
+                    public Publisher<Location> call() throws Exception {
+                        final Flowable<Location> locations = rxLocation.location().updates(profile.toLocationRequest(), overflowPolicy);
+                        return profile.getNumUpdates() > 0 ? locations.take(profile.getNumUpdates()) : locations;
+                    }
+                }));
+    }
+
     public Observable<Location> locationHight() {
-        return location(LocationRequest.create()
-                        .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
-                        .setInterval(interval),
-                Manifest.permission.ACCESS_FINE_LOCATION
-        );
+        return location(LocationProfile.highAccuracy().withInterval(interval));
     }
 
     public Observable<Location> locationLowPower() {
-        return location(LocationRequest.create()
-                        .setPriority(LocationRequest.PRIORITY_LOW_POWER)
-                        .setInterval(interval),
-                Manifest.permission.ACCESS_COARSE_LOCATION
-        );
+        return location(LocationProfile.lowPower().withInterval(interval));
     }
 
     public Observable<Location> locationBalancedPowerAcuracy() {
-        return location(LocationRequest.create()
-                        .setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
-                        .setInterval(interval),
-                Manifest.permission.ACCESS_COARSE_LOCATION);
+        return location(LocationProfile.balancedPowerAccuracy().withInterval(interval));
     }
 
     public Observable<Location> locationNoPower() {
-        return location(LocationRequest.create()
-                        .setPriority(LocationRequest.PRIORITY_NO_POWER)
-                        .setInterval(interval),
-                Manifest.permission.ACCESS_COARSE_LOCATION);
+        return location(LocationProfile.noPower().withInterval(interval));
     }
 
     public Maybe<Location> lastLocation() {
@@ -124,6 +232,111 @@ public class RxGps {
                 .lastElement();
     }
 
+    /* Answers instantly from the locations already seen in this process, or persisted by a
+     * previous one, when the newest one is at most maxAge old and, when maxAccuracy is
+     * greater than 0, at least that accurate. Falls back to lastLocation() otherwise.
+     */
+    public Maybe<Location> lastLocation(final long maxAge, final TimeUnit timeUnit, final float maxAccuracy) {
+        return checkPlayServicesAvailable()
+                .flatMap(new Function<Boolean, ObservableSource<Boolean>>() {
+                    @Override
+                    public ObservableSource<Boolean> apply(@NonNull Boolean aBoolean) throws Exception {
+                        return request(Manifest.permission.ACCESS_COARSE_LOCATION);
+                    }
+                })
+                .flatMapMaybe(new Function<Boolean, MaybeSource<Location>>() {
+                    @Override
+                    public MaybeSource<Location> apply(@NonNull Boolean aBoolean) throws Exception {
+                        // The first lookup reads the persisted location, keep it off the main thread
+                        return Maybe.fromCallable(new Callable<Location>() {
+                            @Override
+                            public Location call() throws Exception {
+                                return rxLocation.lastLocationStore().get(maxAge, timeUnit, maxAccuracy);
+                            }
+                        }).subscribeOn(Schedulers.io()).switchIfEmpty(rxLocation.location().lastLocation());
+                    }
+                })
+                .lastElement();
+    }
+
+    /* Single shot location: the stored location, the last known location and live updates
+     * are raced, and the first location at most maxAge old with an accuracy
+     * of at most targetAccuracy meters is emitted. When none meets the target before the
+     * timeout, the best location seen is emitted instead, or nothing if none was seen. The
+     * live updates are removed as soon as the Maybe terminates, and if they fail the best
+     * location seen is emitted, when there is one.
+     *
+     * A targetAccuracy of 100 meters or more uses balanced power updates and only requires
+     * ACCESS_COARSE_LOCATION; a tighter one uses high accuracy updates and requires
+     * ACCESS_FINE_LOCATION.
+     */
+    public Maybe<Location> currentLocation(final long maxAge, final TimeUnit maxAgeUnit, final float targetAccuracy, final long timeout, final TimeUnit timeoutUnit) {
+        final LocationProfile profile = (targetAccuracy >= COARSE_LOCATION_ACCURACY ? LocationProfile.balancedPowerAccuracy() : LocationProfile.highAccuracy())
+                .withInterval(CURRENT_LOCATION_INTERVAL)
+                .withFastestInterval(CURRENT_LOCATION_INTERVAL / 2);
+
+        return checkPlayServicesAvailable()
+                .flatMap(new Function<Boolean, ObservableSource<Boolean>>() {
+                    @Override
+                    public ObservableSource<Boolean> apply(@NonNull Boolean aBoolean) throws Exception {
+                        return request(profile.getPermission());
+                    }
+                })
+                .flatMapMaybe(new Function<Boolean, MaybeSource<Location>>() {
+                    @Override
+                    public MaybeSource<Location> apply(@NonNull Boolean aBoolean) throws Exception {
+                        return raceForLocation(profile, maxAgeUnit.toMillis(maxAge), targetAccuracy, timeout, timeoutUnit);
+                    }
+                })
+                .lastElement();
+    }
+
+    private Maybe<Location> raceForLocation(LocationProfile profile, long maxAgeMillis, float targetAccuracy, long timeout, TimeUnit timeoutUnit) {
+        final BestLocation best = new BestLocation(maxAgeMillis, targetAccuracy);
+
+        final Observable<Location> stored = Maybe.fromCallable(new Callable<Location>() {
+            @Override
+            public Location call() throws Exception {
+                return rxLocation.lastLocationStore().getLatest();
+            }
+        }).subscribeOn(Schedulers.io()).toObservable();
+
+        final Observable<Location> lastKnown = rxLocation.location().lastLocation()
+                .toObservable()
+                .onErrorResumeNext(Observable.<Location>empty());
+
+        final Observable<Location> live = rxLocation.location().updates(profile.toLocationRequest());
+
+        // A failed registration must not discard a location already seen
+        return Observable.mergeDelayError(stored, lastKnown, live)
+                .filter(new Predicate<Location>() {
+                    @Override
+                    public boolean test(Location location) throws Exception {
+                        return best.offer(location);
+                    }
+                })
+                .take(timeout, timeoutUnit)
+                .firstElement()
+                .onErrorResumeNext(new Function<Throwable, MaybeSource<Location>>() {
+                    @Override
+                    public MaybeSource<Location> apply(@NonNull Throwable throwable) throws Exception {
+                        final Location location = best.get();
+                        return location != null ? Maybe.just(location) : Maybe.<Location>error(throwable);
+                    }
+                })
+                .switchIfEmpty(Maybe.defer(new Callable<MaybeSource<Location>>() {
+                    @Override
+                    public MaybeSource<Location> call() throws Exception {
+                        final Location location = best.get();
+                        return location != null ? Maybe.just(location) : Maybe.<Location>empty();
+                    }
+                }));
+    }
+
+    /* Fails with LastLocationUnavailableException when the provider has no location. To fall
+     * back on a stored location, with a bound on its age and accuracy, use
+     * lastLocation(maxAge, timeUnit, maxAccuracy).
+     */
     public Maybe<Location> lastLocationIfExists() {
         return checkPlayServicesAvailable()
             .flatMap(new Function<Boolean, ObservableSource<Boolean>>() {
@@ -152,21 +365,13 @@ public class RxGps {
     }
 
     private Observable<Boolean> checkPlayServicesAvailable() {
-        return Observable.create(new ObservableOnSubscribe<Boolean>() {
+        return Observable.fromCallable(new Callable<Boolean>() {
             @Override
-            public void subscribe(ObservableEmitter<Boolean> e) throws Exception {
-                final Activity activity = activityReference.get();
-                if (activity != null) {
-                    final GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
-                    final int status = apiAvailability.isGooglePlayServicesAvailable(activity);
-
-                    if (status != ConnectionResult.SUCCESS) {
-                        e.onError(new PlayServicesNotAvailableException());
-                    } else {
-                        e.onNext(true);
-                        e.onComplete();
-                    }
+            public Boolean call() throws Exception {
+                if (!preflightCache.isPlayServicesAvailable()) {
+                    throw new PlayServicesNotAvailableException();
                 }
+                return true;
             }
         });
     }
@@ -175,6 +380,42 @@ public class RxGps {
         return rxLocation.geocoding().fromLocation(location);
     }
 
+    public Observable<Address> geocoding(Observable<Location> locations, float radiusMeters) {
+        return locations.compose(ReverseGeocodingTransformer.forObservable(rxLocation.geocoding(), radiusMeters));
+    }
+
+    // Keeps the best location offered: recent ones first, then the most accurate
+    private static class BestLocation {
+
+        private final long maxAgeMillis;
+        private final float targetAccuracy;
+        private Location best;
+        private boolean bestIsRecent;
+
+        BestLocation(long maxAgeMillis, float targetAccuracy) {
+            this.maxAgeMillis = maxAgeMillis;
+            this.targetAccuracy = targetAccuracy;
+        }
+
+        // Returns whether the location meets the target
+        synchronized boolean offer(Location location) {
+            final boolean recent = System.currentTimeMillis() - location.getTime() <= maxAgeMillis;
+            final float accuracy = location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+
+            if (best == null || (recent && !bestIsRecent)
+                    || (recent == bestIsRecent && accuracy < (best.hasAccuracy() ? best.getAccuracy() : Float.MAX_VALUE))) {
+                best = location;
+                bestIsRecent = recent;
+            }
+
+            return recent && accuracy <= targetAccuracy;
+        }
+
+        synchronized Location get() {
+            return best;
+        }
+    }
+
     public static class PermissionException extends Exception {
         public PermissionException() {
             super("Can't access location without permission");
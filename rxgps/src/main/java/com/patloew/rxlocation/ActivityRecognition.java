@@ -45,6 +45,10 @@ public class ActivityRecognition {
     }
 
     private Single<Status> requestUpdatesInternal(long detectionIntervalMillis, PendingIntent pendingIntent, Long timeout, TimeUnit timeUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.requestActivityUpdates(detectionIntervalMillis, pendingIntent, timeout, timeUnit);
+        }
+
         return Single.create(new ActivityRequestUpdatesSingleOnSubscribe(rxLocation, detectionIntervalMillis, pendingIntent, timeout, timeUnit));
     }
 
@@ -61,6 +65,10 @@ public class ActivityRecognition {
     }
 
     private Single<Status> removeUpdatesInternal(PendingIntent pendingIntent, Long timeout, TimeUnit timeUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.removeActivityUpdates(pendingIntent, timeout, timeUnit);
+        }
+
         return Single.create(new ActivityRemoveUpdatesSingleOnSubscribe(rxLocation, pendingIntent, timeout, timeUnit));
     }
 
@@ -0,0 +1,244 @@
+package com.patloew.rxlocation;
+
+import android.os.SystemClock;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Cache of forward geocoding results for search as you type, in one trie per locale keyed
+ * by the normalized query. A query is answered from its own entry, or else from the entry
+ * of its longest cached prefix when that one is exhaustive (it returned fewer results than
+ * asked for), filtered down to the addresses matching the longer query. Entries expire
+ * after the time to live, and the oldest ones are evicted once the cache is full.
+ */
+class AutocompleteCache {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final int maxSize;
+    private final long timeToLiveMillis;
+
+    private final Map<Locale, Node> roots = new HashMap<>();
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    AutocompleteCache(int maxSize, long timeToLive, TimeUnit timeUnit) {
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeUnit.toMillis(timeToLive);
+    }
+
+    /* Lower case, without accents, with whitespace collapsed. */
+    static String normalize(CharSequence query, Locale locale) {
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFD);
+        normalized = COMBINING_MARKS.matcher(normalized).replaceAll("");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ");
+        return normalized.trim().toLowerCase(locale);
+    }
+
+    synchronized List<CompactAddress> get(Locale locale, String query, int maxResults) {
+        Node node = roots.get(locale);
+        Entry superset = null;
+        long now = SystemClock.elapsedRealtime();
+
+        for (int i = 0; node != null; i++) {
+            Entry entry = node.entry;
+
+            if (entry != null && entry.expiresAt > now) {
+                boolean exhaustive = entry.addresses.size() < entry.maxResults;
+
+                if (i == query.length() && (exhaustive || entry.maxResults >= maxResults)) {
+                    return entry.addresses.size() > maxResults ? entry.addresses.subList(0, maxResults) : entry.addresses;
+                }
+
+                if (exhaustive) {
+                    superset = entry;
+                }
+            }
+
+            if (i == query.length()) {
+                break;
+            }
+
+            node = node.child(query.charAt(i));
+        }
+
+        if (superset == null) {
+            return null;
+        }
+
+        List<CompactAddress> matching = new ArrayList<>();
+
+        for (CompactAddress address : superset.addresses) {
+            if (matches(address, query, locale)) {
+                matching.add(address);
+
+                if (matching.size() == maxResults) {
+                    break;
+                }
+            }
+        }
+
+        return matching;
+    }
+
+    synchronized void put(Locale locale, String query, int maxResults, List<CompactAddress> addresses) {
+        Node root = roots.get(locale);
+
+        if (root == null) {
+            root = new Node();
+            roots.put(locale, root);
+        }
+
+        Node node = root;
+        for (int i = 0; i < query.length(); i++) {
+            node = node.getOrAddChild(query.charAt(i));
+        }
+
+        if (node.entry != null) {
+            entries.remove(node.entry);
+        }
+
+        node.entry = new Entry(locale, query, maxResults, addresses, SystemClock.elapsedRealtime() + timeToLiveMillis);
+        entries.addLast(node.entry);
+
+        while (entries.size() > maxSize) {
+            Entry eldest = entries.removeFirst();
+            remove(roots.get(eldest.locale), eldest.query, 0);
+        }
+    }
+
+    synchronized void clear() {
+        roots.clear();
+        entries.clear();
+    }
+
+    /* Removes the entry of the query and prunes the nodes left without entries. Returns
+     * whether the node itself can be pruned.
+     */
+    private boolean remove(Node node, String query, int depth) {
+        if (node == null) {
+            return false;
+        }
+
+        if (depth == query.length()) {
+            node.entry = null;
+        } else {
+            char c = query.charAt(depth);
+
+            if (remove(node.child(c), query, depth + 1)) {
+                node.removeChild(c);
+            }
+        }
+
+        return node.entry == null && node.childCount == 0;
+    }
+
+    private static boolean matches(CompactAddress address, String query, Locale locale) {
+        if (address.getFeatureName() != null && normalize(address.getFeatureName(), locale).contains(query)) {
+            return true;
+        }
+
+        for (int i = 0; i < address.getAddressLineCount(); i++) {
+            String line = address.getAddressLine(i);
+
+            if (line != null && normalize(line, locale).contains(query)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /* Children are kept in a sorted char array with a parallel array of nodes. */
+    private static class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        int childCount;
+        Entry entry;
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+
+            if (index >= 0) {
+                return children[index];
+            }
+
+            index = -index - 1;
+
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+
+            System.arraycopy(keys, index, keys, index + 1, childCount - index);
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+
+            Node child = new Node();
+            keys[index] = c;
+            children[index] = child;
+            childCount++;
+
+            return child;
+        }
+
+        void removeChild(char c) {
+            int index = Arrays.binarySearch(keys, 0, childCount, c);
+
+            if (index >= 0) {
+                System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+                System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+                childCount--;
+                children[childCount] = null;
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        final Locale locale;
+        final String query;
+        final int maxResults;
+        final List<CompactAddress> addresses;
+        final long expiresAt;
+
+        Entry(Locale locale, String query, int maxResults, List<CompactAddress> addresses, long expiresAt) {
+            this.locale = locale;
+            this.query = query;
+            this.maxResults = maxResults;
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
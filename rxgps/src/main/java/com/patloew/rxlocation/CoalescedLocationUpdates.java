@@ -0,0 +1,141 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.processors.BehaviorProcessor;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Merges the LocationRequests of all the active subscribers into a single registration,
+ * using the strictest priority and the shortest intervals, displacement and max wait time.
+ * The registration is replaced whenever the merged request changes. Every subscriber
+ * receives a view of the merged stream decimated back to its own interval and smallest
+ * displacement.
+ *
+ * Only continuous requests are coalesced: requests with a number of updates or an
+ * expiration are served by SharedLocationUpdates.
+ */
+class CoalescedLocationUpdates {
+
+    /* Fraction of a subscriber's interval a location may arrive early and still be delivered. */
+    static final float INTERVAL_TOLERANCE = 0.1f;
+
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final BehaviorProcessor<LocationRequest> mergedRequests = BehaviorProcessor.create();
+    private final Flowable<Location> mergedUpdates;
+
+    CoalescedLocationUpdates(@NonNull RxLocation rxLocation) {
+        this.mergedUpdates = mergedRequests
+                .distinctUntilChanged(locationRequest -> new SharedLocationUpdates.Key(locationRequest, null, 0))
+                .switchMap(locationRequest -> Flowable.create(rxLocation.location().locationUpdatesOnSubscribe(locationRequest, null, null, null), BackpressureStrategy.MISSING))
+                .doOnNext(location -> rxLocation.lastLocationStore.record(location))
+                .share();
+    }
+
+    static boolean canCoalesce(@NonNull LocationRequest locationRequest) {
+        return locationRequest.getNumUpdates() == Integer.MAX_VALUE && locationRequest.getExpirationTime() == Long.MAX_VALUE;
+    }
+
+    Flowable<Location> updates(@NonNull LocationRequest locationRequest, BackpressureStrategy backpressureStrategy) {
+        return Flowable.defer(() -> {
+            final Subscriber subscriber = new Subscriber(locationRequest);
+            add(subscriber);
+
+            return mergedUpdates
+                    .filter(subscriber::accept)
+                    .doFinally(() -> remove(subscriber));
+        }).compose(upstream -> SharedLocationUpdates.applyBackpressure(upstream, backpressureStrategy));
+    }
+
+    private synchronized void add(Subscriber subscriber) {
+        subscribers.add(subscriber);
+        mergedRequests.onNext(merge());
+    }
+
+    private synchronized void remove(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+
+        if (!subscribers.isEmpty()) {
+            mergedRequests.onNext(merge());
+        }
+    }
+
+    private LocationRequest merge() {
+        int priority = LocationRequest.PRIORITY_NO_POWER;
+        long interval = Long.MAX_VALUE;
+        long fastestInterval = Long.MAX_VALUE;
+        float smallestDisplacement = Float.MAX_VALUE;
+        long maxWaitTime = Long.MAX_VALUE;
+
+        for (Subscriber subscriber : subscribers) {
+            priority = Math.min(priority, subscriber.priority);
+            interval = Math.min(interval, subscriber.interval);
+            fastestInterval = Math.min(fastestInterval, subscriber.fastestInterval);
+            smallestDisplacement = Math.min(smallestDisplacement, subscriber.smallestDisplacement);
+            maxWaitTime = Math.min(maxWaitTime, subscriber.maxWaitTime);
+        }
+
+        return LocationRequest.create()
+                .setPriority(priority)
+                .setInterval(interval)
+                .setFastestInterval(fastestInterval)
+                .setSmallestDisplacement(smallestDisplacement)
+                .setMaxWaitTime(maxWaitTime);
+    }
+
+    private static class Subscriber {
+
+        final int priority;
+        final long interval;
+        final long fastestInterval;
+        final float smallestDisplacement;
+        final long maxWaitTime;
+        final long minDeliveryInterval;
+
+        private Location lastDelivered;
+
+        Subscriber(LocationRequest locationRequest) {
+            this.priority = locationRequest.getPriority();
+            this.interval = locationRequest.getInterval();
+            this.fastestInterval = locationRequest.getFastestInterval();
+            this.smallestDisplacement = locationRequest.getSmallestDisplacement();
+            this.maxWaitTime = locationRequest.getMaxWaitTime();
+            this.minDeliveryInterval = (long) (interval * (1 - INTERVAL_TOLERANCE));
+        }
+
+        synchronized boolean accept(Location location) {
+            if (lastDelivered != null) {
+                if (location.getTime() - lastDelivered.getTime() < minDeliveryInterval) {
+                    return false;
+                }
+
+                if (smallestDisplacement > 0 && GeoMath.distance(lastDelivered.getLatitude(), lastDelivered.getLongitude(), location.getLatitude(), location.getLongitude()) < smallestDisplacement) {
+                    return false;
+                }
+            }
+
+            lastDelivered = location;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.patloew.rxlocation;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Immutable, compact copy of an Address. The named components are interned strings in a
+ * single array, and the address lines are concatenated in one string indexed by their end
+ * offsets (bitwise inverted for a missing line), instead of the HashMap of lines of an
+ * Address. The extras Bundle is not kept.
+ */
+public final class CompactAddress {
+
+    static final int FEATURE_NAME = 0;
+    static final int ADMIN_AREA = 1;
+    static final int SUB_ADMIN_AREA = 2;
+    static final int LOCALITY = 3;
+    static final int SUB_LOCALITY = 4;
+    static final int THOROUGHFARE = 5;
+    static final int SUB_THOROUGHFARE = 6;
+    static final int PREMISES = 7;
+    static final int POSTAL_CODE = 8;
+    static final int COUNTRY_CODE = 9;
+    static final int COUNTRY_NAME = 10;
+    static final int PHONE = 11;
+    static final int URL = 12;
+    static final int COMPONENT_COUNT = 13;
+
+    private static final int[] NO_LINES = new int[0];
+
+    private final Locale locale;
+    private final String[] components;
+    private final String lines;
+    private final int[] lineEnds;
+    private final boolean hasLatitude;
+    private final boolean hasLongitude;
+    private final double latitude;
+    private final double longitude;
+
+    CompactAddress(Locale locale, String[] components, String[] addressLines, boolean hasLatitude, double latitude, boolean hasLongitude, double longitude) {
+        this.locale = locale;
+        this.components = components;
+        this.hasLatitude = hasLatitude;
+        this.latitude = latitude;
+        this.hasLongitude = hasLongitude;
+        this.longitude = longitude;
+
+        for (int i = 0; i < COMPONENT_COUNT; i++) {
+            if (components[i] != null) {
+                components[i] = components[i].intern();
+            }
+        }
+
+        if (addressLines.length == 0) {
+            this.lines = "";
+            this.lineEnds = NO_LINES;
+        } else {
+            StringBuilder builder = new StringBuilder();
+            this.lineEnds = new int[addressLines.length];
+
+            for (int i = 0; i < addressLines.length; i++) {
+                if (addressLines[i] != null) {
+                    builder.append(addressLines[i]);
+                    lineEnds[i] = builder.length();
+                } else {
+                    lineEnds[i] = ~builder.length();
+                }
+            }
+
+            this.lines = builder.toString();
+        }
+    }
+
+    public static CompactAddress from(@NonNull Address address) {
+        String[] components = new String[COMPONENT_COUNT];
+        components[FEATURE_NAME] = address.getFeatureName();
+        components[ADMIN_AREA] = address.getAdminArea();
+        components[SUB_ADMIN_AREA] = address.getSubAdminArea();
+        components[LOCALITY] = address.getLocality();
+        components[SUB_LOCALITY] = address.getSubLocality();
+        components[THOROUGHFARE] = address.getThoroughfare();
+        components[SUB_THOROUGHFARE] = address.getSubThoroughfare();
+        components[PREMISES] = address.getPremises();
+        components[POSTAL_CODE] = address.getPostalCode();
+        components[COUNTRY_CODE] = address.getCountryCode();
+        components[COUNTRY_NAME] = address.getCountryName();
+        components[PHONE] = address.getPhone();
+        components[URL] = address.getUrl();
+
+        String[] addressLines = new String[address.getMaxAddressLineIndex() + 1];
+        for (int i = 0; i < addressLines.length; i++) {
+            addressLines[i] = address.getAddressLine(i);
+        }
+
+        return new CompactAddress(
+                address.getLocale(), components, addressLines,
+                address.hasLatitude(), address.hasLatitude() ? address.getLatitude() : 0,
+                address.hasLongitude(), address.hasLongitude() ? address.getLongitude() : 0
+        );
+    }
+
+    public static List<CompactAddress> from(@NonNull List<Address> addresses) {
+        List<CompactAddress> compactAddresses = new ArrayList<>(addresses.size());
+
+        for (Address address : addresses) {
+            compactAddresses.add(from(address));
+        }
+
+        return compactAddresses;
+    }
+
+    public static List<Address> toAddresses(@NonNull List<CompactAddress> compactAddresses) {
+        List<Address> addresses = new ArrayList<>(compactAddresses.size());
+
+        for (CompactAddress compactAddress : compactAddresses) {
+            addresses.add(compactAddress.toAddress());
+        }
+
+        return addresses;
+    }
+
+    /* Returns a new, mutable Address on every call. */
+    public Address toAddress() {
+        Address address = new Address(locale);
+
+        address.setFeatureName(components[FEATURE_NAME]);
+        address.setAdminArea(components[ADMIN_AREA]);
+        address.setSubAdminArea(components[SUB_ADMIN_AREA]);
+        address.setLocality(components[LOCALITY]);
+        address.setSubLocality(components[SUB_LOCALITY]);
+        address.setThoroughfare(components[THOROUGHFARE]);
+        address.setSubThoroughfare(components[SUB_THOROUGHFARE]);
+        address.setPremises(components[PREMISES]);
+        address.setPostalCode(components[POSTAL_CODE]);
+        address.setCountryCode(components[COUNTRY_CODE]);
+        address.setCountryName(components[COUNTRY_NAME]);
+        address.setPhone(components[PHONE]);
+        address.setUrl(components[URL]);
+
+        if (hasLatitude) {
+            address.setLatitude(latitude);
+        }
+
+        if (hasLongitude) {
+            address.setLongitude(longitude);
+        }
+
+        for (int i = 0; i < lineEnds.length; i++) {
+            String line = getAddressLine(i);
+            if (line != null) {
+                address.setAddressLine(i, line);
+            }
+        }
+
+        return address;
+    }
+
+    String getComponent(int component) {
+        return components[component];
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public int getAddressLineCount() {
+        return lineEnds.length;
+    }
+
+    public String getAddressLine(int index) {
+        if (index < 0 || index >= lineEnds.length || lineEnds[index] < 0) {
+            return null;
+        }
+
+        int start = index == 0 ? 0 : end(lineEnds[index - 1]);
+        return lines.substring(start, lineEnds[index]);
+    }
+
+    private static int end(int lineEnd) {
+        return lineEnd < 0 ? ~lineEnd : lineEnd;
+    }
+
+    public String getFeatureName() {
+        return components[FEATURE_NAME];
+    }
+
+    public String getAdminArea() {
+        return components[ADMIN_AREA];
+    }
+
+    public String getSubAdminArea() {
+        return components[SUB_ADMIN_AREA];
+    }
+
+    public String getLocality() {
+        return components[LOCALITY];
+    }
+
+    public String getSubLocality() {
+        return components[SUB_LOCALITY];
+    }
+
+    public String getThoroughfare() {
+        return components[THOROUGHFARE];
+    }
+
+    public String getSubThoroughfare() {
+        return components[SUB_THOROUGHFARE];
+    }
+
+    public String getPremises() {
+        return components[PREMISES];
+    }
+
+    public String getPostalCode() {
+        return components[POSTAL_CODE];
+    }
+
+    public String getCountryCode() {
+        return components[COUNTRY_CODE];
+    }
+
+    public String getCountryName() {
+        return components[COUNTRY_NAME];
+    }
+
+    public String getPhone() {
+        return components[PHONE];
+    }
+
+    public String getUrl() {
+        return components[URL];
+    }
+
+    public boolean hasLatitude() {
+        return hasLatitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public boolean hasLongitude() {
+        return hasLongitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompactAddress)) return false;
+
+        CompactAddress address = (CompactAddress) o;
+
+        return hasLatitude == address.hasLatitude
+                && hasLongitude == address.hasLongitude
+                && Double.compare(latitude, address.latitude) == 0
+                && Double.compare(longitude, address.longitude) == 0
+                && (locale != null ? locale.equals(address.locale) : address.locale == null)
+                && Arrays.equals(components, address.components)
+                && lines.equals(address.lines)
+                && Arrays.equals(lineEnds, address.lineEnds);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = locale != null ? locale.hashCode() : 0;
+        result = 31 * result + Arrays.hashCode(components);
+        result = 31 * result + lines.hashCode();
+        result = 31 * result + Arrays.hashCode(lineEnds);
+        long bits = Double.doubleToLongBits(latitude);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(longitude);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CompactAddress[");
+
+        for (int i = 0; i < lineEnds.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(getAddressLine(i));
+        }
+
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Only lets a location through once the device has moved at least minDistance meters, or
+ * maxTimeMillis have elapsed, since the last emitted location. A maxTimeMillis of 0 or less
+ * disables the time gate.
+ */
+public class DecimationTransformer {
+
+    public static FlowableTransformer<Location, Location> forFlowable(float minDistance, long maxTimeMillis) {
+        return upstream -> Flowable.defer(() -> upstream.filter(new Decimator(minDistance, maxTimeMillis)::accept));
+    }
+
+    public static ObservableTransformer<Location, Location> forObservable(float minDistance, long maxTimeMillis) {
+        return upstream -> Observable.defer(() -> upstream.filter(new Decimator(minDistance, maxTimeMillis)::accept));
+    }
+
+    /* Keeps the last emitted location as primitives, with the scale of a degree of longitude
+     * at its latitude, so a location is checked with a few multiplications on a local plane.
+     */
+    static class Decimator {
+
+        private final double minDistanceSquared;
+        private final long maxTimeNanos;
+
+        private boolean initialized;
+        private double lastLatitude;
+        private double lastLongitude;
+        private double metersPerDegreeLongitude;
+        private long lastTimeNanos;
+
+        Decimator(float minDistance, long maxTimeMillis) {
+            this.minDistanceSquared = (double) minDistance * minDistance;
+            this.maxTimeNanos = maxTimeMillis > 0 ? maxTimeMillis * 1000000L : Long.MAX_VALUE;
+        }
+
+        boolean accept(Location location) {
+            long timeNanos = GeoMath.timeNanos(location);
+
+            if (initialized && timeNanos - lastTimeNanos < maxTimeNanos) {
+                double dx = (location.getLongitude() - lastLongitude) * metersPerDegreeLongitude;
+                double dy = (location.getLatitude() - lastLatitude) * GeoMath.METERS_PER_DEGREE;
+
+                if (dx * dx + dy * dy < minDistanceSquared) {
+                    return false;
+                }
+            }
+
+            initialized = true;
+            lastLatitude = location.getLatitude();
+            lastLongitude = location.getLongitude();
+            metersPerDegreeLongitude = GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(lastLatitude));
+            lastTimeNanos = timeNanos;
+
+            return true;
+        }
+    }
+}
@@ -10,12 +10,15 @@ import android.support.annotation.RequiresPermission;
 import com.google.android.gms.common.api.Status;
 import com.google.android.gms.location.LocationRequest;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
+import io.reactivex.FlowableOnSubscribe;
 import io.reactivex.Maybe;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 
 /* Copyright 2016 Patrick Löwenstein
@@ -34,9 +37,13 @@ import io.reactivex.Single;
 public class FusedLocation {
 
     private final RxLocation rxLocation;
+    private final SharedLocationUpdates sharedLocationUpdates;
+    private final CoalescedLocationUpdates coalescedLocationUpdates;
 
     FusedLocation(RxLocation rxLocation) {
         this.rxLocation = rxLocation;
+        this.sharedLocationUpdates = new SharedLocationUpdates(rxLocation);
+        this.coalescedLocationUpdates = new CoalescedLocationUpdates(rxLocation);
     }
 
 
@@ -51,6 +58,10 @@ public class FusedLocation {
     }
 
     private Single<Status> flushInternal(Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.flush(timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new LocationFlushSingleOnSubscribe(rxLocation, timeoutTime, timeoutUnit));
     }
 
@@ -59,7 +70,15 @@ public class FusedLocation {
 
     @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
     public Maybe<Location> lastLocation() {
-        return Maybe.create(new LocationLastMaybeOnSubscribe(rxLocation));
+        final Maybe<Location> lastLocation;
+
+        if (rxLocation.usePlayServicesClients()) {
+            lastLocation = rxLocation.playServicesClients.lastLocation();
+        } else {
+            lastLocation = Maybe.create(new LocationLastMaybeOnSubscribe(rxLocation));
+        }
+
+        return lastLocation.doOnSuccess(rxLocation.lastLocationStore::record);
     }
 
 
@@ -67,6 +86,10 @@ public class FusedLocation {
 
     @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
     public Single<Boolean> isLocationAvailable() {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.isLocationAvailable();
+        }
+
         return Single.create(new LocationAvailabilitySingleOnSubscribe(rxLocation));
     }
 
@@ -113,8 +136,101 @@ public class FusedLocation {
         return updatesInternal(locationRequest, looper, timeoutTime, timeoutUnit, backpressureStrategy);
     }
 
+    /* Location updates delivered through a bounded LocationOverflowPolicy instead of a
+     * BackpressureStrategy. Unlike the Observable overloads, the memory used for locations
+     * a slow subscriber has not consumed yet is bounded.
+     */
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<Location> updates(@NonNull LocationRequest locationRequest, @NonNull LocationOverflowPolicy overflowPolicy) {
+        return updatesInternal(locationRequest, null, null, null, BackpressureStrategy.MISSING).compose(overflowPolicy);
+    }
+
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<Location> updates(@NonNull LocationRequest locationRequest, long timeoutTime, @NonNull TimeUnit timeoutUnit, @NonNull LocationOverflowPolicy overflowPolicy) {
+        return updatesInternal(locationRequest, null, timeoutTime, timeoutUnit, BackpressureStrategy.MISSING).compose(overflowPolicy);
+    }
+
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<Location> updates(@NonNull LocationRequest locationRequest, @NonNull Looper looper, @NonNull LocationOverflowPolicy overflowPolicy) {
+        return updatesInternal(locationRequest, looper, null, null, BackpressureStrategy.MISSING).compose(overflowPolicy);
+    }
+
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<Location> updates(@NonNull LocationRequest locationRequest, @NonNull Looper looper, long timeoutTime, @NonNull TimeUnit timeoutUnit, @NonNull LocationOverflowPolicy overflowPolicy) {
+        return updatesInternal(locationRequest, looper, timeoutTime, timeoutUnit, BackpressureStrategy.MISSING).compose(overflowPolicy);
+    }
+
+    /* Location updates delivered on the RxLocation location thread and handed to the given
+     * Scheduler through a LocationHandoff, so neither the main thread nor the connecting
+     * thread is involved. The backpressure strategy applies downstream of the handoff.
+     */
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<Location> updates(@NonNull LocationRequest locationRequest, @NonNull Scheduler scheduler, BackpressureStrategy backpressureStrategy) {
+        return updatesInternal(locationRequest, rxLocation.getLocationLooper(), null, null, BackpressureStrategy.MISSING)
+                .compose(LocationHandoff.on(scheduler))
+                .compose(upstream -> SharedLocationUpdates.applyBackpressure(upstream, backpressureStrategy));
+    }
+
     private Flowable<Location> updatesInternal(LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit, BackpressureStrategy backpressureStrategy) {
-        return Flowable.create(new LocationUpdatesFlowableOnSubscribe(rxLocation, locationRequest, looper, timeoutTime, timeoutUnit), backpressureStrategy);
+        if (rxLocation.coalesceLocationRequests && looper == null && timeoutTime == null && CoalescedLocationUpdates.canCoalesce(locationRequest)) {
+            return coalescedLocationUpdates.updates(locationRequest, backpressureStrategy);
+        }
+
+        return sharedLocationUpdates.updates(locationRequest, looper, timeoutTime, timeoutUnit, backpressureStrategy);
+    }
+
+    /* Creates the FlowableOnSubscribe registering for location updates with the selected engine. */
+    FlowableOnSubscribe<Location> locationUpdatesOnSubscribe(LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit) {
+        looper = looper != null ? looper : rxLocation.getDefaultLooper();
+
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.locationUpdates(locationRequest, looper, timeoutTime, timeoutUnit);
+        } else {
+            return new LocationUpdatesFlowableOnSubscribe(rxLocation, locationRequest, looper, timeoutTime, timeoutUnit);
+        }
+    }
+
+
+    // Batched Location Updates
+
+    /* Emits the locations of each LocationResult as one batch. With LocationRequest.setMaxWaitTime(),
+     * the provider may collect several locations before delivering them in a single callback.
+     */
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<List<Location>> batchedUpdates(@NonNull LocationRequest locationRequest, BackpressureStrategy backpressureStrategy) {
+        return batchedUpdatesInternal(locationRequest, null, null, null, backpressureStrategy);
+    }
+
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<List<Location>> batchedUpdates(@NonNull LocationRequest locationRequest, long timeoutTime, @NonNull TimeUnit timeoutUnit, BackpressureStrategy backpressureStrategy) {
+        return batchedUpdatesInternal(locationRequest, null, timeoutTime, timeoutUnit, backpressureStrategy);
+    }
+
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<List<Location>> batchedUpdates(@NonNull LocationRequest locationRequest, @NonNull Looper looper, BackpressureStrategy backpressureStrategy) {
+        return batchedUpdatesInternal(locationRequest, looper, null, null, backpressureStrategy);
+    }
+
+    @RequiresPermission(anyOf = {Manifest.permission.ACCESS_COARSE_LOCATION, Manifest.permission.ACCESS_FINE_LOCATION})
+    public Flowable<List<Location>> batchedUpdates(@NonNull LocationRequest locationRequest, @NonNull Looper looper, long timeoutTime, @NonNull TimeUnit timeoutUnit, BackpressureStrategy backpressureStrategy) {
+        return batchedUpdatesInternal(locationRequest, looper, timeoutTime, timeoutUnit, backpressureStrategy);
+    }
+
+    private Flowable<List<Location>> batchedUpdatesInternal(LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit, BackpressureStrategy backpressureStrategy) {
+        looper = looper != null ? looper : rxLocation.getDefaultLooper();
+        final Flowable<List<Location>> batchedUpdates;
+
+        if (rxLocation.usePlayServicesClients()) {
+            batchedUpdates = Flowable.create(rxLocation.playServicesClients.locationBatchUpdates(locationRequest, looper, timeoutTime, timeoutUnit), backpressureStrategy);
+        } else {
+            batchedUpdates = Flowable.create(new LocationBatchUpdatesFlowableOnSubscribe(rxLocation, locationRequest, looper, timeoutTime, timeoutUnit), backpressureStrategy);
+        }
+
+        return batchedUpdates.doOnNext(locations -> {
+            if (!locations.isEmpty()) {
+                rxLocation.lastLocationStore.record(locations.get(locations.size() - 1));
+            }
+        });
     }
 
 
@@ -131,6 +247,10 @@ public class FusedLocation {
     }
 
     private Single<Status> requestUpdatesInternal(LocationRequest locationRequest, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.requestUpdates(locationRequest, pendingIntent, timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new LocationRequestUpdatesSingleOnSubscribe(rxLocation, locationRequest, pendingIntent, timeoutTime, timeoutUnit));
     }
 
@@ -146,6 +266,10 @@ public class FusedLocation {
     }
 
     private Single<Status> removeUpdatesInternal(PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.removeUpdates(pendingIntent, timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new LocationRemoveUpdatesSingleOnSubscribe(rxLocation, pendingIntent, timeoutTime, timeoutUnit));
     }
 
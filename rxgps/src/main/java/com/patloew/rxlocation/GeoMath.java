@@ -0,0 +1,58 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+import android.os.Build;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+final class GeoMath {
+
+    static final double EARTH_RADIUS = 6371008.8;
+    static final double METERS_PER_DEGREE = 111320.0;
+
+    // Accuracy assumed for a location which does not report one
+    static final float DEFAULT_ACCURACY = 50f;
+
+    private GeoMath() { }
+
+    /* Distance in meters on an equirectangular projection around the two points. Accurate
+     * to a fraction of a percent for the short distances between consecutive fixes, and
+     * much cheaper than Location.distanceTo() as it needs no float[] nor iteration.
+     */
+    static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double deltaLambda = Math.toRadians(longitude2 - longitude1);
+
+        if (deltaLambda > Math.PI) {
+            deltaLambda -= 2 * Math.PI;
+        } else if (deltaLambda < -Math.PI) {
+            deltaLambda += 2 * Math.PI;
+        }
+
+        double x = deltaLambda * Math.cos((phi1 + phi2) / 2);
+        double y = phi2 - phi1;
+
+        return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+    }
+
+    /* Monotonic timestamp of a location, falling back to its wall clock time before
+     * API 17 or when the provider did not set the elapsed realtime.
+     */
+    static long timeNanos(Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && location.getElapsedRealtimeNanos() != 0) {
+            return location.getElapsedRealtimeNanos();
+        } else {
+            return location.getTime() * 1000000L;
+        }
+    }
+}
@@ -6,12 +6,25 @@ import android.location.Geocoder;
 import android.location.Location;
 import android.support.annotation.NonNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
 
 /* Copyright 2016 Patrick Löwenstein
  *
@@ -28,20 +41,163 @@ import io.reactivex.functions.Function;
  * limitations under the License. */
 public class Geocoding {
 
+    static final String DISK_CACHE_FILE_NAME = "rxlocation_geocoding.cache";
+    static final int AUTOCOMPLETE_CACHE_SIZE = 128;
+    static final long AUTOCOMPLETE_CACHE_TIME_TO_LIVE_MINUTES = 10;
+
     private static final Function<List<Address>, Maybe<Address>> ADDRESS_MAYBE_FUNCTION = addresses -> addresses.isEmpty() ? Maybe.empty(): Maybe.just(addresses.get(0));
 
     private final Context context;
+    private final Map<Locale, Geocoder> geocoders = new ConcurrentHashMap<>();
+    private final InFlightRequests<List<Object>, List<Address>> inFlightRequests = new InFlightRequests<>();
+    private final AutocompleteCache autocompleteCache = new AutocompleteCache(AUTOCOMPLETE_CACHE_SIZE, AUTOCOMPLETE_CACHE_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES);
+    private volatile GeocodingCache cache;
+    private volatile GeocodingDiskCache diskCache;
+    private volatile GeocodingExecutor executor;
+    private volatile OfflineGeocoder offlineGeocoder;
+    private volatile boolean offlineFallbackOnly;
 
     Geocoding(Context context) {
         this.context = context;
     }
 
+    /* Priority of a lookup on the Geocoding executor: queued INTERACTIVE lookups run before
+     * queued BACKGROUND ones.
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    /* Run the Geocoder calls on a pool of at most maxConcurrency threads, starting at most
+     * permitsPerSecond calls per second (0 for no rate limit). Without an executor, calls
+     * block the subscribing thread.
+     */
+    public void setExecutor(int maxConcurrency, double permitsPerSecond) {
+        if (maxConcurrency <= 0 || permitsPerSecond < 0) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0 and permitsPerSecond must not be negative");
+        }
+
+        GeocodingExecutor previous = executor;
+        executor = new GeocodingExecutor(maxConcurrency, permitsPerSecond);
+
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public void removeExecutor() {
+        GeocodingExecutor previous = executor;
+        executor = null;
+
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /* Number of lookups waiting for a thread or a rate limit token. */
+    public int getQueueDepth() {
+        GeocodingExecutor executor = this.executor;
+        return executor != null ? executor.getQueueDepth() : 0;
+    }
+
+    /* Average and longest time lookups waited before the Geocoder was called. */
+    public long getAverageWaitMillis() {
+        GeocodingExecutor executor = this.executor;
+        return executor != null ? executor.getAverageWaitMillis() : 0;
+    }
+
+    public long getMaxWaitMillis() {
+        GeocodingExecutor executor = this.executor;
+        return executor != null ? executor.getMaxWaitMillis() : 0;
+    }
+
+    /* Answer the fromLocation() lookups from a local place dataset. With fallbackOnly, the
+     * Geocoder is still used first, and the offline geocoder only answers when it fails or
+     * is not present; those results are not cached. Pass null to go back to the Geocoder.
+     */
+    public void setOfflineGeocoder(OfflineGeocoder offlineGeocoder, boolean fallbackOnly) {
+        this.offlineFallbackOnly = fallbackOnly;
+        this.offlineGeocoder = offlineGeocoder;
+    }
+
+    boolean hasExecutor() {
+        return executor != null;
+    }
+
+    private <T> Single<T> execute(Callable<T> callable, Priority priority) {
+        GeocodingExecutor executor = this.executor;
+        return executor != null ? executor.execute(callable, priority) : Single.fromCallable(callable);
+    }
+
+    /* Enable an in-memory cache for the fromLocation() lookups. Coordinates are quantized to
+     * cells of cellSizeMeters, and a lookup in a cell already resolved for the same locale
+     * and maxResults within the time to live is answered from the cache. At most maxSize
+     * results are kept, the least recently used are evicted first.
+     */
+    public void enableCache(int maxSize, long timeToLive, @NonNull TimeUnit timeUnit, float cellSizeMeters) {
+        if (maxSize <= 0 || cellSizeMeters <= 0) {
+            throw new IllegalArgumentException("maxSize and cellSizeMeters must be greater than 0");
+        }
+
+        cache = new GeocodingCache(maxSize, timeToLive, timeUnit, cellSizeMeters);
+    }
+
+    public void disableCache() {
+        disablePersistentCache();
+        cache = null;
+    }
+
+    /* Back the in-memory cache with a file in the cache directory, so resolved cells survive
+     * process restarts. Results older than the time to live are ignored. Requires the
+     * in-memory cache to be enabled, whose cell size is used for the file.
+     */
+    public void enablePersistentCache(long timeToLive, @NonNull TimeUnit timeUnit) {
+        GeocodingCache cache = this.cache;
+
+        if (cache == null) {
+            throw new IllegalStateException("enableCache() must be called before enablePersistentCache()");
+        }
+
+        disablePersistentCache();
+        diskCache = new GeocodingDiskCache(new File(context.getCacheDir(), DISK_CACHE_FILE_NAME), cache.cellSizeDegrees, timeToLive, timeUnit);
+    }
+
+    public void disablePersistentCache() {
+        GeocodingDiskCache diskCache = this.diskCache;
+        this.diskCache = null;
+
+        if (diskCache != null) {
+            try {
+                diskCache.close();
+            } catch (IOException ignored) { }
+        }
+    }
+
+    public long getCacheHitCount() {
+        GeocodingCache cache = this.cache;
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    public long getCacheMissCount() {
+        GeocodingCache cache = this.cache;
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
+    private static Locale resolve(Locale locale) {
+        return locale != null ? locale : Locale.getDefault();
+    }
+
     Geocoder getGeocoder(Locale locale) {
-        if(locale != null) {
-            return new Geocoder(context, locale);
-        } else {
-            return new Geocoder(context);
+        locale = resolve(locale);
+        Geocoder geocoder = geocoders.get(locale);
+
+        if(geocoder == null) {
+            geocoder = new Geocoder(context, locale);
+            geocoders.put(locale, geocoder);
         }
+
+        return geocoder;
     }
 
 
@@ -59,7 +215,7 @@ public class Geocoding {
     }
 
     public Single<List<Address>> fromLocation(Locale locale, @NonNull Location location, int maxResults) {
-        return Single.fromCallable(() -> getGeocoder(locale).getFromLocation(location.getLatitude(), location.getLongitude(), maxResults));
+        return fromLocation(locale, location.getLatitude(), location.getLongitude(), maxResults);
     }
 
 
@@ -77,7 +233,121 @@ public class Geocoding {
     }
 
     public Single<List<Address>> fromLocation(Locale locale, double latitude, double longitude, int maxResults) {
-        return Single.fromCallable(() -> getGeocoder(locale).getFromLocation(latitude, longitude, maxResults));
+        return fromLocation(locale, latitude, longitude, maxResults, Priority.INTERACTIVE);
+    }
+
+    /* Memory cache hits are answered right away, without going through the executor. */
+    public Single<List<Address>> fromLocation(Locale locale, double latitude, double longitude, int maxResults, @NonNull Priority priority) {
+        return fromLocation(locale, latitude, longitude, maxResults, priority, CompactAddress::toAddresses, addresses -> addresses);
+    }
+
+    /* Same as fromLocation(), with the results as immutable CompactAddresses, which are
+     * cheaper to keep around than Addresses. Memory cache hits are returned as they are
+     * stored, Addresses are only built on a miss.
+     */
+    public Single<List<CompactAddress>> fromLocationCompact(Locale locale, double latitude, double longitude, int maxResults) {
+        return fromLocation(locale, latitude, longitude, maxResults, Priority.INTERACTIVE, addresses -> addresses, CompactAddress::from);
+    }
+
+    private <T> Single<T> fromLocation(Locale locale, double latitude, double longitude, int maxResults, Priority priority,
+                                       Function<List<CompactAddress>, T> fromCache, Function<List<Address>, T> fromLookup) {
+        return Single.defer(() -> {
+            final OfflineGeocoder offlineGeocoder = this.offlineGeocoder;
+
+            if (offlineGeocoder != null && !offlineFallbackOnly) {
+                return Single.fromCallable(() -> offlineGeocoder.getFromLocation(locale, latitude, longitude, maxResults)).map(fromLookup);
+            }
+
+            final GeocodingCache cache = this.cache;
+            final GeocodingCache.Key key = cache != null ? cache.key(locale, latitude, longitude, maxResults) : null;
+
+            if (cache != null) {
+                List<CompactAddress> addresses = cache.get(key);
+
+                if (addresses != null) {
+                    return Single.just(fromCache.apply(addresses));
+                }
+            }
+
+            return inFlightRequests.get(
+                    Arrays.<Object>asList(resolve(locale), latitude, longitude, maxResults, priority),
+                    () -> execute(() -> getFromLocation(cache, key, locale, latitude, longitude, maxResults), priority)
+            ).map(fromLookup);
+        });
+    }
+
+    List<Address> getFromLocation(GeocodingCache cache, GeocodingCache.Key key, Locale locale, double latitude, double longitude, int maxResults) throws IOException {
+        if (cache == null) {
+            try {
+                return getFromGeocoder(locale, latitude, longitude, maxResults);
+            } catch (IOException e) {
+                return getFromOfflineFallback(e, locale, latitude, longitude, maxResults);
+            }
+        }
+
+        final GeocodingDiskCache diskCache = this.diskCache;
+
+        if (diskCache != null) {
+            List<CompactAddress> compactAddresses = getFromDiskCache(diskCache, key);
+
+            if (compactAddresses != null) {
+                cache.put(key, compactAddresses);
+                return CompactAddress.toAddresses(compactAddresses);
+            }
+        }
+
+        List<Address> addresses;
+
+        try {
+            addresses = getFromGeocoder(locale, latitude, longitude, maxResults);
+        } catch (IOException e) {
+            return getFromOfflineFallback(e, locale, latitude, longitude, maxResults);
+        }
+
+        if (addresses != null) {
+            List<CompactAddress> compactAddresses = CompactAddress.from(addresses);
+            cache.put(key, compactAddresses);
+
+            if (diskCache != null) {
+                putInDiskCache(diskCache, key, compactAddresses);
+            }
+        }
+
+        return addresses;
+    }
+
+    private List<Address> getFromGeocoder(Locale locale, double latitude, double longitude, int maxResults) throws IOException {
+        if (offlineGeocoder != null && !Geocoder.isPresent()) {
+            throw new IOException("No Geocoder backend present");
+        }
+
+        return getGeocoder(locale).getFromLocation(latitude, longitude, maxResults);
+    }
+
+    private List<Address> getFromOfflineFallback(IOException e, Locale locale, double latitude, double longitude, int maxResults) throws IOException {
+        final OfflineGeocoder offlineGeocoder = this.offlineGeocoder;
+
+        if (offlineGeocoder == null) {
+            throw e;
+        }
+
+        return offlineGeocoder.getFromLocation(locale, latitude, longitude, maxResults);
+    }
+
+    // The disk cache is best effort: an I/O error falls back to the Geocoder
+
+    private static List<CompactAddress> getFromDiskCache(GeocodingDiskCache diskCache, GeocodingCache.Key key) {
+        try {
+            return diskCache.get(key);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void putInDiskCache(GeocodingDiskCache diskCache, GeocodingCache.Key key, List<CompactAddress> addresses) {
+        try {
+            diskCache.put(key, addresses);
+        } catch (IOException | RuntimeException ignored) { }
     }
 
 
@@ -95,7 +365,14 @@ public class Geocoding {
     }
 
     public Single<List<Address>> fromLocationName(Locale locale, @NonNull String locationName, int maxResults, double lowerLeftLatitude, double lowerLeftLongitude, double upperRightLatitude, double upperRightLongitude) {
-        return Single.fromCallable(() -> getGeocoder(locale).getFromLocationName(locationName, maxResults, lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude));
+        return fromLocationName(locale, locationName, maxResults, lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude, Priority.INTERACTIVE);
+    }
+
+    public Single<List<Address>> fromLocationName(Locale locale, @NonNull String locationName, int maxResults, double lowerLeftLatitude, double lowerLeftLongitude, double upperRightLatitude, double upperRightLongitude, @NonNull Priority priority) {
+        return inFlightRequests.get(
+                Arrays.<Object>asList(resolve(locale), locationName, maxResults, lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude, priority),
+                () -> execute(() -> getGeocoder(locale).getFromLocationName(locationName, maxResults, lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude), priority)
+        );
     }
 
 
@@ -113,7 +390,115 @@ public class Geocoding {
     }
 
     public Single<List<Address>> fromLocationName(Locale locale, @NonNull String locationName, int maxResults) {
-        return Single.fromCallable(() -> getGeocoder(locale).getFromLocationName(locationName, maxResults));
+        return fromLocationName(locale, locationName, maxResults, Priority.INTERACTIVE);
+    }
+
+    public Single<List<Address>> fromLocationName(Locale locale, @NonNull String locationName, int maxResults, @NonNull Priority priority) {
+        return inFlightRequests.get(
+                Arrays.<Object>asList(resolve(locale), locationName, maxResults, priority),
+                () -> execute(() -> getGeocoder(locale).getFromLocationName(locationName, maxResults), priority)
+        );
+    }
+
+
+
+    /* Resolve a batch of location names, with at most parallelism lookups at a time. Results
+     * are emitted in the order of the queries, a query repeated while its lookup is pending
+     * shares that lookup, and a failing query yields an unsuccessful GeocodingResult instead
+     * of failing the batch. Without an executor, lookups run on Schedulers.io(). With one,
+     * they run with BACKGROUND priority, and the executor's maxConcurrency and rate limit
+     * also bound how many run at a time.
+     */
+    public Flowable<GeocodingResult> fromLocationNames(@NonNull Flowable<GeocodingQuery> queries, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+
+        return Flowable.defer(() -> {
+            final AtomicLong index = new AtomicLong();
+
+            return queries.concatMapEager(query -> {
+                final long position = index.getAndIncrement();
+
+                // Repeated queries share the pending lookup through the in-flight requests
+                Single<List<Address>> lookup = fromLocationName(query, Priority.BACKGROUND);
+
+                if (!hasExecutor()) {
+                    lookup = lookup.subscribeOn(Schedulers.io());
+                }
+
+                return lookup
+                        .map(addresses -> new GeocodingResult(position, query, addresses, null))
+                        .onErrorReturn(error -> new GeocodingResult(position, query, null, error))
+                        .toFlowable();
+            }, parallelism, 1);
+        });
+    }
+
+    public Single<List<GeocodingResult>> fromLocationNames(@NonNull List<GeocodingQuery> queries, int parallelism) {
+        return fromLocationNames(Flowable.fromIterable(queries), parallelism).toList(Math.max(1, queries.size()));
+    }
+
+    public Single<List<GeocodingResult>> fromLocationNames(Locale locale, @NonNull List<String> locationNames, int maxResults, int parallelism) {
+        List<GeocodingQuery> queries = new ArrayList<>(locationNames.size());
+
+        for (String locationName : locationNames) {
+            queries.add(GeocodingQuery.create(locale, locationName, maxResults));
+        }
+
+        return fromLocationNames(queries, parallelism);
+    }
+
+    private Single<List<Address>> fromLocationName(GeocodingQuery query, Priority priority) {
+        if (query.hasBounds) {
+            return fromLocationName(query.locale, query.locationName, query.maxResults, query.lowerLeftLatitude, query.lowerLeftLongitude, query.upperRightLatitude, query.upperRightLongitude, priority);
+        } else {
+            return fromLocationName(query.locale, query.locationName, query.maxResults, priority);
+        }
+    }
+
+
+
+    /* Search as you type: maps the texts of a search box to the addresses matching the latest
+     * one. A text the autocomplete cache can answer, from its own results or from those of
+     * a shorter prefix, is answered right away. Otherwise it is looked up once no newer text
+     * arrived for the debounce time, and a newer text cancels the pending lookup. A failed
+     * lookup emits nothing for that text and keeps the stream going.
+     */
+    public Observable<List<Address>> autocomplete(Locale locale, @NonNull Observable<? extends CharSequence> queries, int maxResults, long debounce, @NonNull TimeUnit unit) {
+        final Locale resolvedLocale = resolve(locale);
+
+        return queries
+                .map(query -> query.toString().trim())
+                .distinctUntilChanged(query -> AutocompleteCache.normalize(query, resolvedLocale))
+                .switchMap(query -> {
+                    final String normalized = AutocompleteCache.normalize(query, resolvedLocale);
+
+                    if (normalized.isEmpty()) {
+                        return Observable.just(Collections.<Address>emptyList());
+                    }
+
+                    List<CompactAddress> cached = autocompleteCache.get(resolvedLocale, normalized, maxResults);
+
+                    if (cached != null) {
+                        return Observable.just(CompactAddress.toAddresses(cached));
+                    }
+
+                    return Single.timer(debounce, unit, Schedulers.io())
+                            .flatMap(ignored -> execute(() -> getFromLocationName(resolvedLocale, query, maxResults), Priority.INTERACTIVE))
+                            .doOnSuccess(addresses -> autocompleteCache.put(resolvedLocale, normalized, maxResults, CompactAddress.from(addresses)))
+                            .toObservable()
+                            .onErrorResumeNext(Observable.<List<Address>>empty());
+                });
+    }
+
+    public void clearAutocompleteCache() {
+        autocompleteCache.clear();
+    }
+
+    private List<Address> getFromLocationName(Locale locale, String locationName, int maxResults) throws IOException {
+        List<Address> addresses = getGeocoder(locale).getFromLocationName(locationName, maxResults);
+        return addresses != null ? addresses : Collections.<Address>emptyList();
     }
 
 }
@@ -0,0 +1,154 @@
+package com.patloew.rxlocation;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * In-memory cache of reverse geocoding results. Coordinates are quantized to square cells
+ * of a configurable size in meters, so all the lookups inside a cell share the same entry;
+ * the longitude step of each row of cells is widened by the cosine of its latitude, so
+ * cells keep their width away from the equator. Entries expire after the time to live,
+ * and the least recently used ones are evicted once the cache is full. Results are kept
+ * as CompactAddresses.
+ */
+class GeocodingCache {
+
+    // Keeps the cells near the poles from spanning the whole globe
+    private static final double MIN_COS_LATITUDE = 0.01;
+
+    private final int maxSize;
+    private final long timeToLiveMillis;
+    final double cellSizeDegrees;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final LinkedHashMap<Key, Entry> entries;
+
+    GeocodingCache(int maxSize, long timeToLive, TimeUnit timeUnit, float cellSizeMeters) {
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeUnit.toMillis(timeToLive);
+        this.cellSizeDegrees = cellSizeMeters / GeoMath.METERS_PER_DEGREE;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > GeocodingCache.this.maxSize;
+            }
+        };
+    }
+
+    Key key(Locale locale, double latitude, double longitude, int maxResults) {
+        long latitudeCell = (long) Math.floor(latitude / cellSizeDegrees);
+        double rowLatitude = (latitudeCell + 0.5) * cellSizeDegrees;
+        double longitudeCellSizeDegrees = cellSizeDegrees / Math.max(Math.cos(Math.toRadians(rowLatitude)), MIN_COS_LATITUDE);
+
+        return new Key(
+                locale != null ? locale : Locale.getDefault(),
+                latitudeCell,
+                (long) Math.floor(longitude / longitudeCellSizeDegrees),
+                maxResults
+        );
+    }
+
+    synchronized List<CompactAddress> get(Key key) {
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.expiresAt > SystemClock.elapsedRealtime()) {
+            hitCount.incrementAndGet();
+            return entry.addresses;
+        }
+
+        if (entry != null) {
+            entries.remove(key);
+        }
+
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    synchronized void put(Key key, List<CompactAddress> addresses) {
+        entries.put(key, new Entry(addresses, SystemClock.elapsedRealtime() + timeToLiveMillis));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    static final class Key {
+
+        final Locale locale;
+        final long latitudeCell;
+        final long longitudeCell;
+        final int maxResults;
+
+        Key(Locale locale, long latitudeCell, long longitudeCell, int maxResults) {
+            this.locale = locale;
+            this.latitudeCell = latitudeCell;
+            this.longitudeCell = longitudeCell;
+            this.maxResults = maxResults;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+
+            return latitudeCell == key.latitudeCell
+                    && longitudeCell == key.longitudeCell
+                    && maxResults == key.maxResults
+                    && locale.equals(key.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = locale.hashCode();
+            result = 31 * result + (int) (latitudeCell ^ (latitudeCell >>> 32));
+            result = 31 * result + (int) (longitudeCell ^ (longitudeCell >>> 32));
+            result = 31 * result + maxResults;
+            return result;
+        }
+    }
+
+    private static final class Entry {
+
+        final List<CompactAddress> addresses;
+        final long expiresAt;
+
+        Entry(List<CompactAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.patloew.rxlocation;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Persistent reverse geocoding cache, keyed like GeocodingCache. Records are appended to a
+ * single file, read back through a memory mapping, and located with an in-memory index of
+ * offsets built by scanning the file on first use. A record superseded by a newer one for
+ * the same key, or expired, becomes dead space; the file is compacted once dead records
+ * outweigh live ones. The file and its mapping grow by whole chunks, so most appends need
+ * no new mapping; the zeroed tail of the last chunk reads as the end of the records.
+ *
+ * File layout: header (magic, version, cell size), then records of
+ * [int length][key][long createdAt][int count][addresses].
+ */
+class GeocodingDiskCache {
+
+    static final int MAGIC = 0x52584743;
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 4 + 4 + 8;
+    static final long MIN_COMPACTION_SIZE = 64 * 1024;
+    static final long GROWTH_CHUNK = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final double cellSizeDegrees;
+    private final long timeToLiveMillis;
+
+    private final Map<GeocodingCache.Key, Long> index = new HashMap<>();
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer mappedBuffer;
+    private long fileSize;
+    private long liveBytes;
+
+    GeocodingDiskCache(@NonNull File file, double cellSizeDegrees, long timeToLive, @NonNull TimeUnit timeUnit) {
+        this.file = file;
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.timeToLiveMillis = timeUnit.toMillis(timeToLive);
+    }
+
+    synchronized List<CompactAddress> get(GeocodingCache.Key key) throws IOException {
+        open();
+
+        Long offset = index.get(key);
+
+        if (offset == null) {
+            return null;
+        }
+
+        ByteBuffer record = record(offset);
+        readKey(record);
+
+        if (record.getLong() + timeToLiveMillis < System.currentTimeMillis()) {
+            remove(key, offset);
+            return null;
+        }
+
+        try {
+            int count = readSize(record, 1);
+            List<CompactAddress> addresses = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                addresses.add(readAddress(record));
+            }
+
+            return addresses;
+        } catch (RuntimeException e) {
+            // Corrupted addresses: forget the record, the next lookup goes to the Geocoder
+            remove(key, offset);
+            return null;
+        }
+    }
+
+    synchronized void put(GeocodingCache.Key key, List<CompactAddress> addresses) throws IOException {
+        open();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0);
+        writeKey(out, key);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(addresses.size());
+
+        for (CompactAddress address : addresses) {
+            writeAddress(out, address);
+        }
+
+        out.flush();
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        long offset = fileSize;
+
+        if (offset + record.capacity() > mappedBuffer.capacity()) {
+            grow(offset + record.capacity());
+        }
+
+        // The length goes in last: a crash part-way through leaves a zero length, which
+        // reads as the end of the records
+        FileChannel channel = randomAccessFile.getChannel();
+        record.position(4);
+        channel.write(record, offset + 4);
+        ByteBuffer length = ByteBuffer.allocate(4);
+        length.putInt(0, record.capacity() - 4);
+        channel.write(length, offset);
+        fileSize += record.capacity();
+
+        Long previous = index.put(key, offset);
+        if (previous != null) {
+            liveBytes -= recordSize(previous);
+        }
+        liveBytes += record.capacity();
+
+        if (fileSize > MIN_COMPACTION_SIZE && fileSize - HEADER_SIZE > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    synchronized void close() throws IOException {
+        index.clear();
+        liveBytes = 0;
+        fileSize = 0;
+        mappedBuffer = null;
+
+        if (randomAccessFile != null) {
+            RandomAccessFile closing = randomAccessFile;
+            randomAccessFile = null;
+            closing.close();
+        }
+    }
+
+    private void open() throws IOException {
+        if (randomAccessFile != null) {
+            return;
+        }
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try {
+            if (!hasValidHeader()) {
+                randomAccessFile.setLength(0);
+                randomAccessFile.seek(0);
+                randomAccessFile.writeInt(MAGIC);
+                randomAccessFile.writeInt(VERSION);
+                randomAccessFile.writeDouble(cellSizeDegrees);
+            }
+
+            loadIndex();
+        } catch (IOException | RuntimeException e) {
+            // Drop the half-built index, the next call starts over from the file
+            try {
+                close();
+            } catch (IOException ignored) { }
+
+            throw e;
+        }
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        if (randomAccessFile.length() < HEADER_SIZE) {
+            return false;
+        }
+
+        randomAccessFile.seek(0);
+
+        return randomAccessFile.readInt() == MAGIC
+                && randomAccessFile.readInt() == VERSION
+                && randomAccessFile.readDouble() == cellSizeDegrees;
+    }
+
+    private void loadIndex() throws IOException {
+        index.clear();
+        liveBytes = 0;
+        remap(randomAccessFile.length());
+
+        long expiredBefore = System.currentTimeMillis() - timeToLiveMillis;
+        long capacity = mappedBuffer.capacity();
+        long offset = HEADER_SIZE;
+
+        while (offset + 4 <= capacity) {
+            int length = mappedBuffer.getInt((int) offset);
+
+            if (length == 0) {
+                // Unused tail of the last chunk
+                break;
+            } else if (length < 0 || offset + 4 + length > capacity) {
+                // Corrupted by a crash while appending: drop the partial record
+                randomAccessFile.setLength(offset);
+                remap(offset);
+                break;
+            }
+
+            ByteBuffer record = record(offset);
+            GeocodingCache.Key key;
+            long createdAt;
+
+            try {
+                key = readKey(record);
+                createdAt = record.getLong();
+            } catch (RuntimeException e) {
+                // Unreadable record: drop it and everything after it, rather than failing every open
+                randomAccessFile.setLength(offset);
+                remap(offset);
+                break;
+            }
+
+            if (createdAt >= expiredBefore) {
+                Long previous = index.put(key, offset);
+                if (previous != null) {
+                    liveBytes -= recordSize(previous);
+                }
+                liveBytes += 4 + length;
+            } else {
+                Long previous = index.remove(key);
+                if (previous != null) {
+                    liveBytes -= recordSize(previous);
+                }
+            }
+
+            offset += 4 + length;
+        }
+
+        fileSize = offset;
+    }
+
+    private void remove(GeocodingCache.Key key, long offset) {
+        index.remove(key);
+        liveBytes -= recordSize(offset);
+    }
+
+    /* Extends the file to the next chunk boundary past minSize, zero filled, and maps it. */
+    private void grow(long minSize) throws IOException {
+        long size = (minSize + GROWTH_CHUNK - 1) / GROWTH_CHUNK * GROWTH_CHUNK;
+        randomAccessFile.setLength(size);
+        remap(size);
+    }
+
+    private void remap(long size) throws IOException {
+        mappedBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    private int recordSize(long offset) {
+        return 4 + mappedBuffer.getInt((int) offset);
+    }
+
+    private ByteBuffer record(long offset) {
+        ByteBuffer record = mappedBuffer.duplicate();
+        int length = record.getInt((int) offset);
+        record.position((int) offset + 4);
+        record.limit((int) offset + 4 + length);
+
+        return record;
+    }
+
+    /* Rewrites the live records to a new file, which then replaces the current one. */
+    private void compact() throws IOException {
+        File compactFile = new File(file.getPath() + ".compact");
+        RandomAccessFile compacted = new RandomAccessFile(compactFile, "rw");
+
+        try {
+            compacted.setLength(0);
+            compacted.writeInt(MAGIC);
+            compacted.writeInt(VERSION);
+            compacted.writeDouble(cellSizeDegrees);
+
+            FileChannel channel = compacted.getChannel();
+            long position = HEADER_SIZE;
+
+            for (Long offset : index.values()) {
+                int size = recordSize(offset);
+                ByteBuffer record = mappedBuffer.duplicate();
+                record.position(offset.intValue());
+                record.limit(offset.intValue() + size);
+                position += channel.write(record, position);
+            }
+        } finally {
+            compacted.close();
+        }
+
+        close();
+
+        if (!compactFile.renameTo(file)) {
+            compactFile.delete();
+        }
+
+        open();
+    }
+
+    private void writeKey(DataOutputStream out, GeocodingCache.Key key) throws IOException {
+        writeLocale(out, key.locale);
+        out.writeLong(key.latitudeCell);
+        out.writeLong(key.longitudeCell);
+        out.writeInt(key.maxResults);
+    }
+
+    private GeocodingCache.Key readKey(ByteBuffer in) {
+        Locale locale = readLocale(in);
+        return new GeocodingCache.Key(locale, in.getLong(), in.getLong(), in.getInt());
+    }
+
+    static void writeAddress(DataOutputStream out, CompactAddress address) throws IOException {
+        writeLocale(out, address.getLocale());
+
+        for (int i = 0; i < CompactAddress.COMPONENT_COUNT; i++) {
+            writeString(out, address.getComponent(i));
+        }
+
+        out.writeBoolean(address.hasLatitude());
+        out.writeDouble(address.getLatitude());
+        out.writeBoolean(address.hasLongitude());
+        out.writeDouble(address.getLongitude());
+
+        int lineCount = address.getAddressLineCount();
+        out.writeInt(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            writeString(out, address.getAddressLine(i));
+        }
+    }
+
+    static CompactAddress readAddress(ByteBuffer in) {
+        Locale locale = readLocale(in);
+
+        String[] components = new String[CompactAddress.COMPONENT_COUNT];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = readString(in);
+        }
+
+        boolean hasLatitude = in.get() != 0;
+        double latitude = in.getDouble();
+        boolean hasLongitude = in.get() != 0;
+        double longitude = in.getDouble();
+
+        String[] addressLines = new String[readSize(in, 4)];
+        for (int i = 0; i < addressLines.length; i++) {
+            addressLines[i] = readString(in);
+        }
+
+        return new CompactAddress(locale, components, addressLines, hasLatitude, latitude, hasLongitude, longitude);
+    }
+
+    /* Locales are stored as their language tag, which keeps the script and extensions that
+     * a language/country/variant triple drops. Before API 21 a locale has neither, and is
+     * stored as its toString() form.
+     */
+    static void writeLocale(DataOutputStream out, Locale locale) throws IOException {
+        if (locale == null) {
+            writeString(out, null);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            writeString(out, locale.toLanguageTag());
+        } else {
+            writeString(out, locale.toString());
+        }
+    }
+
+    static Locale readLocale(ByteBuffer in) {
+        String value = readString(in);
+
+        if (value == null) {
+            return null;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return Locale.forLanguageTag(value);
+        } else {
+            String[] parts = value.split("_", 3);
+            return new Locale(parts[0], parts.length > 1 ? parts[1] : "", parts.length > 2 ? parts[2] : "");
+        }
+    }
+
+    /* Reads a count of elements taking at least elementSize bytes each, checked against the
+     * bytes left so that a corrupted count cannot allocate a huge array.
+     */
+    static int readSize(ByteBuffer in, int elementSize) {
+        int size = in.getInt();
+
+        if (size < 0 || size > in.remaining() / elementSize) {
+            throw new BufferUnderflowException();
+        }
+
+        return size;
+    }
+
+    /* Strings are stored as [int byte length][UTF-8 bytes], with a length of -1 for null. */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+
+        if (length == -1) {
+            return null;
+        } else if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+}
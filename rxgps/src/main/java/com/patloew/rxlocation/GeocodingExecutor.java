@@ -0,0 +1,187 @@
+package com.patloew.rxlocation;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Single;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Runs the Geocoder calls on a bounded pool of threads. Queued calls are ordered by
+ * priority, then by submission order, and every call takes a token from a token bucket
+ * before it starts, so bursts are spread out to the configured rate. Calls cancelled while
+ * still queued are removed from the queue.
+ */
+class GeocodingExecutor {
+
+    static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final TokenBucket tokenBucket;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    GeocodingExecutor(int maxConcurrency, double permitsPerSecond) {
+        this.tokenBucket = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond) : null;
+        this.executor = new ThreadPoolExecutor(
+                maxConcurrency, maxConcurrency,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new GeocodingThreadFactory()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    <V> Single<V> execute(@NonNull Callable<V> callable, @NonNull Geocoding.Priority priority) {
+        return Single.create(emitter -> {
+            final long enqueuedAt = SystemClock.elapsedRealtime();
+
+            final Task task = new Task(priority, sequence.getAndIncrement(), () -> {
+                if (emitter.isDisposed()) {
+                    return;
+                }
+
+                try {
+                    if (tokenBucket != null) {
+                        tokenBucket.acquire();
+                    }
+
+                    recordWait(SystemClock.elapsedRealtime() - enqueuedAt);
+                    emitter.onSuccess(callable.call());
+                } catch (Throwable throwable) {
+                    emitter.tryOnError(throwable);
+                }
+            });
+
+            emitter.setCancellable(() -> executor.remove(task));
+            executor.execute(task);
+        });
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    long getAverageWaitMillis() {
+        long count = executedCount.get();
+        return count > 0 ? totalWaitMillis.get() / count : 0;
+    }
+
+    long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    private void recordWait(long waitMillis) {
+        executedCount.incrementAndGet();
+        totalWaitMillis.addAndGet(waitMillis);
+
+        long max;
+        do {
+            max = maxWaitMillis.get();
+        } while (waitMillis > max && !maxWaitMillis.compareAndSet(max, waitMillis));
+    }
+
+    private static class Task implements Runnable, Comparable<Task> {
+
+        final Geocoding.Priority priority;
+        final long sequence;
+        final Runnable runnable;
+
+        Task(Geocoding.Priority priority, long sequence, Runnable runnable) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : (sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1));
+        }
+    }
+
+    /* Token bucket allowing bursts of up to one second worth of permits. A caller reserves a
+     * token, possibly going into debt, and sleeps until the reservation is due.
+     */
+    static class TokenBucket {
+
+        private final double permitsPerSecond;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.capacity = Math.max(1, permitsPerSecond);
+            this.tokens = capacity;
+            this.lastRefill = SystemClock.elapsedRealtime();
+        }
+
+        void acquire() throws InterruptedException {
+            long waitMillis = reserve();
+
+            if (waitMillis > 0) {
+                Thread.sleep(waitMillis);
+            }
+        }
+
+        private synchronized long reserve() {
+            long now = SystemClock.elapsedRealtime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / 1000);
+            lastRefill = now;
+            tokens -= 1;
+
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1000 / permitsPerSecond);
+        }
+    }
+
+    private static class GeocodingThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "RxLocation-Geocoding-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.patloew.rxlocation;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * A forward geocoding lookup of a batch: a location name, optionally restricted to a
+ * bounding box, with its locale and number of results. Equal queries are resolved once
+ * per batch.
+ */
+public final class GeocodingQuery {
+
+    final Locale locale;
+    final String locationName;
+    final int maxResults;
+    final boolean hasBounds;
+    final double lowerLeftLatitude;
+    final double lowerLeftLongitude;
+    final double upperRightLatitude;
+    final double upperRightLongitude;
+
+    private GeocodingQuery(Locale locale, String locationName, int maxResults, boolean hasBounds, double lowerLeftLatitude, double lowerLeftLongitude, double upperRightLatitude, double upperRightLongitude) {
+        this.locale = locale != null ? locale : Locale.getDefault();
+        this.locationName = locationName;
+        this.maxResults = maxResults;
+        this.hasBounds = hasBounds;
+        this.lowerLeftLatitude = lowerLeftLatitude;
+        this.lowerLeftLongitude = lowerLeftLongitude;
+        this.upperRightLatitude = upperRightLatitude;
+        this.upperRightLongitude = upperRightLongitude;
+    }
+
+    public static GeocodingQuery create(Locale locale, @NonNull String locationName, int maxResults) {
+        return new GeocodingQuery(locale, locationName, maxResults, false, 0, 0, 0, 0);
+    }
+
+    public static GeocodingQuery create(Locale locale, @NonNull String locationName, int maxResults, double lowerLeftLatitude, double lowerLeftLongitude, double upperRightLatitude, double upperRightLongitude) {
+        return new GeocodingQuery(locale, locationName, maxResults, true, lowerLeftLatitude, lowerLeftLongitude, upperRightLatitude, upperRightLongitude);
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public String getLocationName() {
+        return locationName;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GeocodingQuery)) return false;
+
+        GeocodingQuery query = (GeocodingQuery) o;
+
+        return maxResults == query.maxResults
+                && hasBounds == query.hasBounds
+                && Double.compare(lowerLeftLatitude, query.lowerLeftLatitude) == 0
+                && Double.compare(lowerLeftLongitude, query.lowerLeftLongitude) == 0
+                && Double.compare(upperRightLatitude, query.upperRightLatitude) == 0
+                && Double.compare(upperRightLongitude, query.upperRightLongitude) == 0
+                && locale.equals(query.locale)
+                && locationName.equals(query.locationName);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = locale.hashCode();
+        result = 31 * result + locationName.hashCode();
+        result = 31 * result + maxResults;
+        result = 31 * result + (hasBounds ? 1 : 0);
+        long bits = Double.doubleToLongBits(lowerLeftLatitude);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(lowerLeftLongitude);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(upperRightLatitude);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(upperRightLongitude);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package com.patloew.rxlocation;
+
+import android.location.Address;
+
+import java.util.Collections;
+import java.util.List;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Outcome of one query of a batch: either the addresses found, possibly none, or the error
+ * that query failed with. The index is the position of the query in the batch.
+ */
+public final class GeocodingResult {
+
+    private final long index;
+    private final GeocodingQuery query;
+    private final List<Address> addresses;
+    private final Throwable error;
+
+    GeocodingResult(long index, GeocodingQuery query, List<Address> addresses, Throwable error) {
+        this.index = index;
+        this.query = query;
+        this.addresses = addresses;
+        this.error = error;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public GeocodingQuery getQuery() {
+        return query;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /* Empty when the query failed. */
+    public List<Address> getAddresses() {
+        return addresses != null ? addresses : Collections.<Address>emptyList();
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+}
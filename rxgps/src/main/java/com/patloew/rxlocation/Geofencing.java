@@ -48,6 +48,10 @@ public class Geofencing {
     }
 
     private Single<Status> addInternal(GeofencingRequest geofencingRequest, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.addGeofences(geofencingRequest, pendingIntent, timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new GeofencingAddSingleOnSubscribe(rxLocation, geofencingRequest, pendingIntent, timeoutTime, timeoutUnit));
     }
 
@@ -71,6 +75,10 @@ public class Geofencing {
     }
 
     private Single<Status> removeInternal(List<String> geofenceRequestIds, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.removeGeofences(geofenceRequestIds, pendingIntent, timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new GeofencingRemoveSingleOnSubscribe(rxLocation, geofenceRequestIds, pendingIntent, timeoutTime, timeoutUnit));
     }
 }
@@ -0,0 +1,226 @@
+package com.patloew.rxlocation;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.ActivityRecognition;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Ref-counted GoogleApiClient shared by all the requests of a RxLocation instance.
+ * The client is connected on the first acquire(), handed out to every subscriber
+ * while connected, and disconnected once the last subscriber has released it and
+ * the linger period has elapsed without a new acquire().
+ */
+class GoogleApiClientPool {
+
+    static final long DEFAULT_LINGER_TIME = 5;
+    static final TimeUnit DEFAULT_LINGER_UNIT = TimeUnit.SECONDS;
+
+    private final Context ctx;
+    private final Set<Callbacks> subscribers = new LinkedHashSet<>();
+    private final Set<Callbacks> pending = new LinkedHashSet<>();
+
+    private GoogleApiClient apiClient;
+    private Disposable lingerDisposable;
+    private long lingerTime = DEFAULT_LINGER_TIME;
+    private TimeUnit lingerUnit = DEFAULT_LINGER_UNIT;
+
+    GoogleApiClientPool(@NonNull Context ctx) {
+        this.ctx = ctx;
+    }
+
+    synchronized void setLinger(long time, @NonNull TimeUnit timeUnit) {
+        this.lingerTime = time;
+        this.lingerUnit = timeUnit;
+    }
+
+    GoogleApiClient.Builder getApiClientBuilder() {
+        return new GoogleApiClient.Builder(ctx)
+                .addApi(LocationServices.API)
+                .addApi(ActivityRecognition.API);
+    }
+
+    /* Registers the callbacks as a user of the shared client. onConnected() is called
+     * immediately if the client is already connected, otherwise once it is.
+     */
+    void acquire(@NonNull Callbacks callbacks) {
+        final GoogleApiClient readyClient;
+
+        synchronized (this) {
+            cancelLinger();
+
+            if (apiClient == null) {
+                apiClient = createApiClient();
+            }
+
+            callbacks.setClient(apiClient);
+            subscribers.add(callbacks);
+
+            if (apiClient.isConnected()) {
+                readyClient = apiClient;
+            } else {
+                readyClient = null;
+                pending.add(callbacks);
+
+                if (!apiClient.isConnecting()) {
+                    apiClient.connect();
+                }
+            }
+        }
+
+        if (readyClient != null) {
+            callbacks.onConnected(null);
+        }
+    }
+
+    /* Unregisters the callbacks. Releasing callbacks that were already dropped because
+     * of a connection failure is a no-op.
+     */
+    synchronized void release(@NonNull Callbacks callbacks) {
+        pending.remove(callbacks);
+
+        if (subscribers.remove(callbacks) && subscribers.isEmpty() && apiClient != null) {
+            if (lingerTime <= 0) {
+                disconnect();
+            } else {
+                final GoogleApiClient lingeringClient = apiClient;
+                lingerDisposable = Schedulers.computation().scheduleDirect(() -> {
+                    synchronized (GoogleApiClientPool.this) {
+                        if (subscribers.isEmpty() && apiClient == lingeringClient) {
+                            disconnect();
+                        }
+                    }
+                }, lingerTime, lingerUnit);
+            }
+        }
+    }
+
+    private synchronized boolean isSubscribed(Callbacks callbacks) {
+        return subscribers.contains(callbacks);
+    }
+
+    private GoogleApiClient createApiClient() {
+        ClientListener listener = new ClientListener();
+
+        GoogleApiClient client = getApiClientBuilder()
+                .addConnectionCallbacks(listener)
+                .addOnConnectionFailedListener(listener)
+                .build();
+
+        listener.client = client;
+
+        return client;
+    }
+
+    private void cancelLinger() {
+        if (lingerDisposable != null) {
+            lingerDisposable.dispose();
+            lingerDisposable = null;
+        }
+    }
+
+    private void disconnect() {
+        cancelLinger();
+
+        if (apiClient != null) {
+            apiClient.disconnect();
+            apiClient = null;
+        }
+    }
+
+    /* Drops the client and every subscriber, returning the subscribers that have to be
+     * notified of the failure. Returns null if the client is not the current one anymore.
+     */
+    @Nullable
+    private synchronized List<Callbacks> dropClient(GoogleApiClient client) {
+        if (client != apiClient) {
+            return null;
+        }
+
+        List<Callbacks> dropped = new ArrayList<>(subscribers);
+        subscribers.clear();
+        pending.clear();
+        disconnect();
+
+        return dropped;
+    }
+
+    interface Callbacks extends GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+        void setClient(GoogleApiClient client);
+    }
+
+    private class ClientListener implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+
+        GoogleApiClient client;
+
+        @Override
+        public void onConnected(@Nullable Bundle bundle) {
+            final List<Callbacks> ready;
+
+            synchronized (GoogleApiClientPool.this) {
+                if (client != apiClient) {
+                    return;
+                }
+
+                ready = new ArrayList<>(pending);
+                pending.clear();
+            }
+
+            for (Callbacks callbacks : ready) {
+                // Released while the others were notified: its subscriber is gone
+                if (isSubscribed(callbacks)) {
+                    callbacks.onConnected(bundle);
+                }
+            }
+        }
+
+        @Override
+        public void onConnectionSuspended(int cause) {
+            List<Callbacks> dropped = dropClient(client);
+
+            if (dropped != null) {
+                for (Callbacks callbacks : dropped) {
+                    callbacks.onConnectionSuspended(cause);
+                }
+            }
+        }
+
+        @Override
+        public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+            List<Callbacks> dropped = dropClient(client);
+
+            if (dropped != null) {
+                for (Callbacks callbacks : dropped) {
+                    callbacks.onConnectionFailed(connectionResult);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.patloew.rxlocation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Single;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Deduplicates concurrent identical requests: while a request for a key is running, other
+ * subscribers for the same key share its result instead of starting a new call. The entry
+ * is removed as soon as the call terminates, so results are never reused afterwards. The
+ * shared call is reference counted: it is disposed once all of its subscribers are.
+ */
+class InFlightRequests<K, V> {
+
+    private final Map<K, Single<V>> requests = new HashMap<>();
+
+    Single<V> get(K key, Callable<Single<V>> requestFactory) {
+        return Single.defer(() -> getOrCreate(key, requestFactory));
+    }
+
+    private synchronized Single<V> getOrCreate(K key, Callable<Single<V>> requestFactory) throws Exception {
+        Single<V> request = requests.get(key);
+
+        if (request == null) {
+            //noinspection unchecked
+            final Single<V>[] holder = new Single[1];
+
+            request = requestFactory.call()
+                    .doFinally(() -> remove(key, holder[0]))
+                    .toObservable()
+                    .replay(1)
+                    .refCount()
+                    .singleOrError();
+
+            holder[0] = request;
+            requests.put(key, request);
+        }
+
+        return request;
+    }
+
+    private synchronized void remove(K key, Single<V> request) {
+        if (requests.get(key) == request) {
+            requests.remove(key);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Smooths a location stream with a constant velocity Kalman filter. Emitted locations
+ * carry the smoothed position and accuracy, and the estimated speed and bearing.
+ * The acceleration noise (in m/s²) sets how fast the estimated velocity may change:
+ * lower values smooth more, higher values follow the fixes more closely.
+ */
+public class KalmanFilterTransformer {
+
+    public static final double DEFAULT_ACCELERATION_NOISE = 3.0;
+
+    public static FlowableTransformer<Location, Location> forFlowable() {
+        return forFlowable(DEFAULT_ACCELERATION_NOISE);
+    }
+
+    public static FlowableTransformer<Location, Location> forFlowable(double accelerationNoise) {
+        return upstream -> Flowable.defer(() -> {
+            LocationKalmanFilter filter = new LocationKalmanFilter(accelerationNoise);
+            return upstream.map(filter::filter);
+        });
+    }
+
+    public static ObservableTransformer<Location, Location> forObservable() {
+        return forObservable(DEFAULT_ACCELERATION_NOISE);
+    }
+
+    public static ObservableTransformer<Location, Location> forObservable(double accelerationNoise) {
+        return upstream -> Observable.defer(() -> {
+            LocationKalmanFilter filter = new LocationKalmanFilter(accelerationNoise);
+            return upstream.map(filter::filter);
+        });
+    }
+}
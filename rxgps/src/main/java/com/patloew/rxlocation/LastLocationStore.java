@@ -0,0 +1,219 @@
+package com.patloew.rxlocation;
+
+import android.content.Context;
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.schedulers.Schedulers;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Process-wide record of the newest location seen by any location stream or last location
+ * lookup of the lib. The newest location is kept in memory and written to a small file in
+ * the files directory, at most once per PERSIST_DELAY_MILLIS, so it is available again
+ * after a process restart or a reboot. The file is read once, on Schedulers.io() as soon
+ * as the store is created, or by the first lookup if that comes earlier.
+ *
+ * The age of a location is measured on the wall clock, from Location.getTime(), as the
+ * elapsed realtime does not survive a reboot.
+ */
+public final class LastLocationStore {
+
+    static final String FILE_NAME = "rxlocation_last_location";
+    static final int VERSION = 1;
+    static final long PERSIST_DELAY_MILLIS = 10000;
+
+    private static volatile LastLocationStore instance;
+
+    private final File file;
+    private final AtomicBoolean persistScheduled = new AtomicBoolean();
+    private final Object loadLock = new Object();
+    private final Object persistLock = new Object();
+
+    private volatile Location latest;
+    private volatile boolean loaded;
+
+    private LastLocationStore(File file) {
+        this.file = file;
+    }
+
+    static LastLocationStore get(@NonNull Context context) {
+        if (instance == null) {
+            synchronized (LastLocationStore.class) {
+                if (instance == null) {
+                    final LastLocationStore store = new LastLocationStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+                    Schedulers.io().scheduleDirect(store::latest);
+                    instance = store;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /* Returns the newest location if it is at most maxAge old and, when maxAccuracy is
+     * greater than 0, has an accuracy of at most maxAccuracy meters. Returns null otherwise.
+     */
+    public Location get(long maxAge, @NonNull TimeUnit timeUnit, float maxAccuracy) {
+        Location location = latest();
+
+        if (location == null || System.currentTimeMillis() - location.getTime() > timeUnit.toMillis(maxAge)) {
+            return null;
+        }
+
+        if (maxAccuracy > 0 && (!location.hasAccuracy() || location.getAccuracy() > maxAccuracy)) {
+            return null;
+        }
+
+        return new Location(location);
+    }
+
+    /* Returns the newest location, however old, or null if none was ever recorded. */
+    public Location getLatest() {
+        Location location = latest();
+        return location != null ? new Location(location) : null;
+    }
+
+    /* Called from the location callbacks, so it never reads the file itself: a location older
+     * than a persisted one not loaded yet is dropped by latest(), before it is persisted.
+     */
+    void record(Location location) {
+        if (location == null) {
+            return;
+        }
+
+        synchronized (this) {
+            Location current = latest;
+
+            if (current != null && current.getTime() >= location.getTime()) {
+                return;
+            }
+
+            latest = new Location(location);
+        }
+
+        if (persistScheduled.compareAndSet(false, true)) {
+            Schedulers.io().scheduleDirect(() -> {
+                persistScheduled.set(false);
+                persist(latest());
+            }, PERSIST_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Location latest() {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) {
+                    Location persisted = load();
+
+                    synchronized (this) {
+                        if (persisted != null && (latest == null || latest.getTime() < persisted.getTime())) {
+                            latest = persisted;
+                        }
+                    }
+
+                    loaded = true;
+                }
+            }
+        }
+
+        return latest;
+    }
+
+    private Location load() {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+
+            Location location = new Location(in.readUTF());
+            location.setTime(in.readLong());
+            location.setLatitude(in.readDouble());
+            location.setLongitude(in.readDouble());
+
+            float accuracy = in.readFloat();
+            if (!Float.isNaN(accuracy)) {
+                location.setAccuracy(accuracy);
+            }
+
+            boolean hasAltitude = in.readBoolean();
+            double altitude = in.readDouble();
+            if (hasAltitude) {
+                location.setAltitude(altitude);
+            }
+
+            float speed = in.readFloat();
+            if (!Float.isNaN(speed)) {
+                location.setSpeed(speed);
+            }
+
+            float bearing = in.readFloat();
+            if (!Float.isNaN(bearing)) {
+                location.setBearing(bearing);
+            }
+
+            return location;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /* Writes to a temporary file first, so a crash never leaves a partial file behind. */
+    private void persist(Location location) {
+        if (location == null) {
+            return;
+        }
+
+        synchronized (persistLock) {
+            write(location);
+        }
+    }
+
+    private void write(Location location) {
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile))) {
+            out.writeInt(VERSION);
+            out.writeUTF(location.getProvider() != null ? location.getProvider() : "");
+            out.writeLong(location.getTime());
+            out.writeDouble(location.getLatitude());
+            out.writeDouble(location.getLongitude());
+            out.writeFloat(location.hasAccuracy() ? location.getAccuracy() : Float.NaN);
+            out.writeBoolean(location.hasAltitude());
+            out.writeDouble(location.getAltitude());
+            out.writeFloat(location.hasSpeed() ? location.getSpeed() : Float.NaN);
+            out.writeFloat(location.hasBearing() ? location.getBearing() : Float.NaN);
+        } catch (IOException e) {
+            tmpFile.delete();
+            return;
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.FlowableEmitter;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. */
+class LocationBatchUpdatesFlowableOnSubscribe extends RxLocationFlowableOnSubscribe<List<Location>> {
+
+    final LocationRequest locationRequest;
+    final Looper looper;
+    RxLocationCallback locationCallback;
+
+    protected LocationBatchUpdatesFlowableOnSubscribe(@NonNull RxLocation rxLocation, LocationRequest locationRequest, Looper looper, Long timeout, TimeUnit timeUnit) {
+        super(rxLocation, timeout, timeUnit);
+        this.locationRequest = locationRequest;
+        this.looper = looper;
+    }
+
+    @Override
+    protected void onGoogleApiClientReady(GoogleApiClient apiClient, FlowableEmitter<List<Location>> emitter) {
+        locationCallback = new RxLocationCallback(emitter);
+
+        //noinspection MissingPermission
+        setupLocationPendingResult(
+                LocationServices.FusedLocationApi.requestLocationUpdates(apiClient, locationRequest, locationCallback, looper),
+                new StatusErrorResultCallBack(emitter)
+        );
+    }
+
+    @Override
+    protected void onUnsubscribed(GoogleApiClient apiClient) {
+        if (locationCallback != null) {
+            LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, locationCallback);
+            locationCallback.onUnsubscribed();
+            locationCallback = null;
+        }
+    }
+
+    static class RxLocationCallback extends LocationCallback {
+
+        private FlowableEmitter<List<Location>> emitter;
+
+        RxLocationCallback(FlowableEmitter<List<Location>> emitter) {
+            this.emitter = emitter;
+        }
+
+        void onUnsubscribed() {
+            emitter = null;
+        }
+
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            if (emitter != null && locationResult != null) { emitter.onNext(locationResult.getLocations()); }
+        }
+    }
+}
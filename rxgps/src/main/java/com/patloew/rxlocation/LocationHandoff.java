@@ -0,0 +1,301 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.plugins.RxJavaPlugins;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Hands the locations of a location callback over to a Scheduler, in place of observeOn().
+ * The callback thread is the single producer and the Scheduler worker the single consumer
+ * of a preallocated ring buffer, so a location costs no allocation and no lock on its way
+ * through. When the subscriber falls behind and the buffer is full, new locations are
+ * dropped and counted instead of growing the buffer.
+ */
+public final class LocationHandoff implements FlowableTransformer<Location, Location> {
+
+    private final Scheduler scheduler;
+    private final int capacity;
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private LocationHandoff(Scheduler scheduler, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        this.scheduler = scheduler;
+        this.capacity = capacity;
+    }
+
+    public static LocationHandoff on(@NonNull Scheduler scheduler) {
+        return new LocationHandoff(scheduler, Flowable.bufferSize());
+    }
+
+    /* The capacity is rounded up to the next power of two. */
+    public static LocationHandoff on(@NonNull Scheduler scheduler, int capacity) {
+        return new LocationHandoff(scheduler, capacity);
+    }
+
+    /* Number of locations dropped because the buffer was full. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public Flowable<Location> apply(Flowable<Location> upstream) {
+        return new Flowable<Location>() {
+            @Override
+            protected void subscribeActual(Subscriber<? super Location> subscriber) {
+                upstream.subscribe(new HandoffSubscriber(subscriber, scheduler.createWorker(), capacity, droppedCount));
+            }
+        };
+    }
+
+    static final class HandoffSubscriber extends AtomicInteger implements FlowableSubscriber<Location>, Subscription, Runnable {
+
+        final Subscriber<? super Location> downstream;
+        final Scheduler.Worker worker;
+        final AtomicLong droppedCount;
+
+        final Location[] ring;
+        final int mask;
+        final AtomicLong producerIndex = new AtomicLong();
+        final AtomicLong consumerIndex = new AtomicLong();
+        final AtomicLong requested = new AtomicLong();
+
+        Subscription upstream;
+        volatile boolean done;
+        volatile boolean cancelled;
+        Throwable error;
+
+        HandoffSubscriber(Subscriber<? super Location> downstream, Scheduler.Worker worker, int capacity, AtomicLong droppedCount) {
+            this.downstream = downstream;
+            this.worker = worker;
+            this.droppedCount = droppedCount;
+
+            int size = Integer.highestOneBit(capacity);
+            if (size < capacity) {
+                size <<= 1;
+            }
+
+            this.ring = new Location[size];
+            this.mask = size - 1;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                RxJavaPlugins.onError(new IllegalStateException("Subscription already set"));
+            } else {
+                upstream = subscription;
+                downstream.onSubscribe(this);
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(Location location) {
+            if (done) {
+                return;
+            }
+
+            long producer = producerIndex.get();
+
+            if (producer - consumerIndex.get() == ring.length) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+
+            ring[(int) producer & mask] = location;
+            producerIndex.lazySet(producer + 1);
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+
+            error = throwable;
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                RxJavaPlugins.onError(new IllegalArgumentException("n > 0 required but it was " + n));
+                return;
+            }
+
+            addRequested(n);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                worker.dispose();
+
+                if (getAndIncrement() == 0) {
+                    clear();
+                }
+            }
+        }
+
+        // Request accounting, with Long.MAX_VALUE standing for an unbounded request
+
+        private void addRequested(long n) {
+            for (;;) {
+                long current = requested.get();
+
+                if (current == Long.MAX_VALUE) {
+                    return;
+                }
+
+                long next = current + n;
+                if (next < 0L) {
+                    next = Long.MAX_VALUE;
+                }
+
+                if (requested.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        private void produced(long n) {
+            for (;;) {
+                long current = requested.get();
+
+                if (current == Long.MAX_VALUE || requested.compareAndSet(current, current - n)) {
+                    return;
+                }
+            }
+        }
+
+        private void schedule() {
+            if (getAndIncrement() == 0) {
+                worker.schedule(this);
+            }
+        }
+
+        private void clear() {
+            long consumer = consumerIndex.get();
+            long producer = producerIndex.get();
+
+            while (consumer != producer) {
+                ring[(int) consumer & mask] = null;
+                consumer++;
+            }
+
+            consumerIndex.lazySet(consumer);
+        }
+
+        private boolean checkTerminated(boolean isDone, boolean isEmpty) {
+            if (cancelled) {
+                clear();
+                return true;
+            }
+
+            if (isDone) {
+                Throwable throwable = error;
+
+                if (throwable != null) {
+                    clear();
+                    downstream.onError(throwable);
+                    worker.dispose();
+                    return true;
+                } else if (isEmpty) {
+                    downstream.onComplete();
+                    worker.dispose();
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            for (;;) {
+                long requestedCount = requested.get();
+                long emitted = 0L;
+
+                while (emitted != requestedCount) {
+                    boolean isDone = done;
+                    long consumer = consumerIndex.get();
+                    boolean isEmpty = consumer == producerIndex.get();
+
+                    if (checkTerminated(isDone, isEmpty)) {
+                        return;
+                    }
+
+                    if (isEmpty) {
+                        break;
+                    }
+
+                    int index = (int) consumer & mask;
+                    Location location = ring[index];
+                    ring[index] = null;
+                    consumerIndex.lazySet(consumer + 1);
+
+                    downstream.onNext(location);
+                    emitted++;
+                }
+
+                if (emitted == requestedCount && checkTerminated(done, consumerIndex.get() == producerIndex.get())) {
+                    return;
+                }
+
+                if (emitted != 0L) {
+                    produced(emitted);
+                }
+
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Constant velocity Kalman filter over locations. Positions are projected on a local
+ * plane around the first location, and each axis is filtered independently with a
+ * [position, velocity] state. The measurement noise of a location is its accuracy.
+ * The whole state is kept in primitive fields.
+ */
+class LocationKalmanFilter {
+
+    static final float MIN_ACCURACY = 1f;
+
+    private final double accelerationVariance;
+
+    private boolean initialized;
+    private long lastTimeNanos;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerDegreeLongitude;
+
+    // East axis: position, velocity and covariance
+    private double x, vx, pxx, pxv, pvv;
+    // North axis: position, velocity and covariance
+    private double y, vy, pyy, pyv, pww;
+
+    LocationKalmanFilter(double accelerationNoise) {
+        this.accelerationVariance = accelerationNoise * accelerationNoise;
+    }
+
+    Location filter(Location location) {
+        double accuracy = location.hasAccuracy() ? Math.max(location.getAccuracy(), MIN_ACCURACY) : GeoMath.DEFAULT_ACCURACY;
+        double variance = accuracy * accuracy;
+        long timeNanos = GeoMath.timeNanos(location);
+
+        if (!initialized) {
+            initialized = true;
+            originLatitude = location.getLatitude();
+            originLongitude = location.getLongitude();
+            metersPerDegreeLongitude = GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(originLatitude));
+
+            x = 0; vx = 0; pxx = variance; pxv = 0; pvv = variance;
+            y = 0; vy = 0; pyy = variance; pyv = 0; pww = variance;
+            lastTimeNanos = timeNanos;
+
+            return location;
+        }
+
+        // Irregular or out of order timestamps: only predict forward in time
+        double dt = Math.max(0, (timeNanos - lastTimeNanos) / 1e9);
+        lastTimeNanos = Math.max(lastTimeNanos, timeNanos);
+
+        if (dt > 0) {
+            double dt2 = dt * dt;
+            double q = accelerationVariance;
+
+            x += vx * dt;
+            pxx += dt * (2 * pxv + dt * pvv) + q * dt2 * dt2 / 4;
+            pxv += dt * pvv + q * dt2 * dt / 2;
+            pvv += q * dt2;
+
+            y += vy * dt;
+            pyy += dt * (2 * pyv + dt * pww) + q * dt2 * dt2 / 4;
+            pyv += dt * pww + q * dt2 * dt / 2;
+            pww += q * dt2;
+        }
+
+        double measuredX = (location.getLongitude() - originLongitude) * metersPerDegreeLongitude;
+        double measuredY = (location.getLatitude() - originLatitude) * GeoMath.METERS_PER_DEGREE;
+
+        // East axis update
+        double s = pxx + variance;
+        double kp = pxx / s;
+        double kv = pxv / s;
+        double innovation = measuredX - x;
+        x += kp * innovation;
+        vx += kv * innovation;
+        pvv -= kv * pxv;
+        pxv -= kp * pxv;
+        pxx -= kp * pxx;
+
+        // North axis update
+        s = pyy + variance;
+        kp = pyy / s;
+        kv = pyv / s;
+        innovation = measuredY - y;
+        y += kp * innovation;
+        vy += kv * innovation;
+        pww -= kv * pyv;
+        pyv -= kp * pyv;
+        pyy -= kp * pyy;
+
+        Location smoothed = new Location(location);
+        smoothed.setLatitude(originLatitude + y / GeoMath.METERS_PER_DEGREE);
+        smoothed.setLongitude(originLongitude + x / metersPerDegreeLongitude);
+        smoothed.setAccuracy((float) Math.sqrt(Math.max(pxx, pyy)));
+        smoothed.setSpeed((float) Math.sqrt(vx * vx + vy * vy));
+
+        double bearing = Math.toDegrees(Math.atan2(vx, vy));
+        smoothed.setBearing((float) (bearing < 0 ? bearing + 360 : bearing));
+
+        return smoothed;
+    }
+}
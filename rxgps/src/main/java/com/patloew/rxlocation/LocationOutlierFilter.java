@@ -0,0 +1,189 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+
+import org.reactivestreams.Publisher;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Drops physically implausible locations from a location stream: locations older than or
+ * as old as the last accepted one, locations implying a speed or acceleration above the
+ * limits since the last accepted one, and locations whose accuracy is much worse than the
+ * recent accepted accuracy. After too many consecutive rejections the filter restarts
+ * from the current location, so a bad first fix cannot lock it out.
+ *
+ * The rejection counters are shared by all the subscriptions of this instance.
+ */
+public final class LocationOutlierFilter implements FlowableTransformer<Location, Location>, ObservableTransformer<Location, Location> {
+
+    public static final float DEFAULT_MAX_SPEED = 70f;
+    public static final float DEFAULT_MAX_ACCELERATION = 10f;
+    public static final float DEFAULT_ACCURACY_FACTOR = 3f;
+    public static final float DEFAULT_MIN_ACCURACY_THRESHOLD = 30f;
+    public static final int DEFAULT_MAX_CONSECUTIVE_REJECTIONS = 5;
+
+    static final float ACCURACY_SMOOTHING = 0.2f;
+
+    private float maxSpeed = DEFAULT_MAX_SPEED;
+    private float maxAcceleration = DEFAULT_MAX_ACCELERATION;
+    private float accuracyFactor = DEFAULT_ACCURACY_FACTOR;
+    private float minAccuracyThreshold = DEFAULT_MIN_ACCURACY_THRESHOLD;
+    private int maxConsecutiveRejections = DEFAULT_MAX_CONSECUTIVE_REJECTIONS;
+
+    private final AtomicLong rejectedTimestampCount = new AtomicLong();
+    private final AtomicLong rejectedSpeedCount = new AtomicLong();
+    private final AtomicLong rejectedAccelerationCount = new AtomicLong();
+    private final AtomicLong rejectedAccuracyCount = new AtomicLong();
+
+    public static LocationOutlierFilter create() {
+        return new LocationOutlierFilter();
+    }
+
+    /* Maximum speed in m/s implied by two consecutive locations. */
+    public LocationOutlierFilter maxSpeed(float maxSpeed) {
+        this.maxSpeed = maxSpeed;
+        return this;
+    }
+
+    /* Maximum acceleration in m/s² implied by three consecutive locations. */
+    public LocationOutlierFilter maxAcceleration(float maxAcceleration) {
+        this.maxAcceleration = maxAcceleration;
+        return this;
+    }
+
+    /* A location is rejected when its accuracy is worse than this factor times the average
+     * accuracy of the accepted locations, and worse than the min accuracy threshold.
+     */
+    public LocationOutlierFilter accuracyFactor(float accuracyFactor) {
+        this.accuracyFactor = accuracyFactor;
+        return this;
+    }
+
+    public LocationOutlierFilter minAccuracyThreshold(float minAccuracyThreshold) {
+        this.minAccuracyThreshold = minAccuracyThreshold;
+        return this;
+    }
+
+    public LocationOutlierFilter maxConsecutiveRejections(int maxConsecutiveRejections) {
+        this.maxConsecutiveRejections = maxConsecutiveRejections;
+        return this;
+    }
+
+    public long getRejectedTimestampCount() {
+        return rejectedTimestampCount.get();
+    }
+
+    public long getRejectedSpeedCount() {
+        return rejectedSpeedCount.get();
+    }
+
+    public long getRejectedAccelerationCount() {
+        return rejectedAccelerationCount.get();
+    }
+
+    public long getRejectedAccuracyCount() {
+        return rejectedAccuracyCount.get();
+    }
+
+    public long getRejectedCount() {
+        return getRejectedTimestampCount() + getRejectedSpeedCount() + getRejectedAccelerationCount() + getRejectedAccuracyCount();
+    }
+
+    @Override
+    public Publisher<Location> apply(Flowable<Location> upstream) {
+        return Flowable.defer(() -> upstream.filter(new State()::accept));
+    }
+
+    @Override
+    public ObservableSource<Location> apply(Observable<Location> upstream) {
+        return Observable.defer(() -> upstream.filter(new State()::accept));
+    }
+
+    private class State {
+
+        private boolean initialized;
+        private long lastTimeNanos;
+        private double lastLatitude;
+        private double lastLongitude;
+        private double lastSpeed = Double.NaN;
+        private double averageAccuracy;
+        private int consecutiveRejections;
+
+        boolean accept(Location location) {
+            long timeNanos = GeoMath.timeNanos(location);
+            float accuracy = location.hasAccuracy() ? location.getAccuracy() : GeoMath.DEFAULT_ACCURACY;
+
+            if (!initialized) {
+                reset(location, timeNanos, accuracy);
+                return true;
+            }
+
+            if (timeNanos <= lastTimeNanos) {
+                rejectedTimestampCount.incrementAndGet();
+                return false;
+            }
+
+            AtomicLong rejection = null;
+            double dt = (timeNanos - lastTimeNanos) / 1e9;
+            double distance = GeoMath.distance(lastLatitude, lastLongitude, location.getLatitude(), location.getLongitude());
+            double speed = Math.max(0, distance - accuracy) / dt;
+
+            if (accuracy > minAccuracyThreshold && accuracy > accuracyFactor * averageAccuracy) {
+                rejection = rejectedAccuracyCount;
+            } else if (speed > maxSpeed) {
+                rejection = rejectedSpeedCount;
+            } else if (!Double.isNaN(lastSpeed) && Math.abs(speed - lastSpeed) / dt > maxAcceleration) {
+                rejection = rejectedAccelerationCount;
+            }
+
+            if (rejection != null) {
+                rejection.incrementAndGet();
+
+                if (++consecutiveRejections > maxConsecutiveRejections) {
+                    reset(location, timeNanos, accuracy);
+                }
+
+                return false;
+            }
+
+            consecutiveRejections = 0;
+            lastTimeNanos = timeNanos;
+            lastLatitude = location.getLatitude();
+            lastLongitude = location.getLongitude();
+            lastSpeed = speed;
+            averageAccuracy += ACCURACY_SMOOTHING * (accuracy - averageAccuracy);
+
+            return true;
+        }
+
+        private void reset(Location location, long timeNanos, float accuracy) {
+            initialized = true;
+            consecutiveRejections = 0;
+            lastTimeNanos = timeNanos;
+            lastLatitude = location.getLatitude();
+            lastLongitude = location.getLongitude();
+            lastSpeed = Double.NaN;
+            averageAccuracy = accuracy;
+        }
+    }
+}
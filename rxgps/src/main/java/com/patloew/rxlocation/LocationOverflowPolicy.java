@@ -0,0 +1,97 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Bounded overflow policy for location updates, see FusedLocation.updates(LocationRequest, LocationOverflowPolicy).
+ * The policy counts the locations it discards: use one instance per subscription to get
+ * per subscription counts.
+ *
+ * The policy only acts on locations the downstream has not requested yet. Operators that
+ * prefetch, like observeOn() which requests 128 items by default, queue locations of their
+ * own: use observeOn(scheduler, false, 1) to get the latest location on another thread.
+ */
+public final class LocationOverflowPolicy implements FlowableTransformer<Location, Location> {
+
+    private final Type type;
+    private final int capacity;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private LocationOverflowPolicy(Type type, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        this.type = type;
+        this.capacity = capacity;
+    }
+
+    /* Buffers up to capacity locations, and signals a MissingBackpressureException when
+     * the buffer is full.
+     */
+    public static LocationOverflowPolicy buffer(int capacity) {
+        return new LocationOverflowPolicy(Type.BUFFER, capacity);
+    }
+
+    /* Only keeps the latest location that has not been requested yet. Replaced locations
+     * are counted as coalesced.
+     */
+    public static LocationOverflowPolicy latest() {
+        return new LocationOverflowPolicy(Type.LATEST, 1);
+    }
+
+    /* Buffers up to capacity locations, and drops the oldest buffered location when the
+     * buffer is full.
+     */
+    public static LocationOverflowPolicy dropOldest(int capacity) {
+        return new LocationOverflowPolicy(Type.DROP_OLDEST, capacity);
+    }
+
+    /* Number of locations dropped because the buffer was full. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /* Number of locations replaced by a more recent one before being delivered. */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Override
+    public Flowable<Location> apply(Flowable<Location> upstream) {
+        switch (type) {
+            case LATEST:
+                return upstream.onBackpressureBuffer(capacity, coalescedCount::incrementAndGet, BackpressureOverflowStrategy.DROP_OLDEST);
+            case DROP_OLDEST:
+                return upstream.onBackpressureBuffer(capacity, droppedCount::incrementAndGet, BackpressureOverflowStrategy.DROP_OLDEST);
+            default:
+                return upstream.onBackpressureBuffer(capacity, droppedCount::incrementAndGet, BackpressureOverflowStrategy.ERROR);
+        }
+    }
+
+    private enum Type {
+        BUFFER,
+        LATEST,
+        DROP_OLDEST
+    }
+}
@@ -57,6 +57,10 @@ public class LocationSettings {
     }
 
     private Single<LocationSettingsResult> checkInternal(LocationSettingsRequest locationSettingsRequest, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.checkLocationSettings(locationSettingsRequest, timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new SettingsCheckSingleOnSubscribe(rxLocation, locationSettingsRequest, timeoutTime, timeoutUnit));
     }
 
@@ -102,6 +106,10 @@ public class LocationSettings {
 
 
     private Single<Boolean> checkAndHandleResolutionInternal(LocationSettingsRequest locationSettingsRequest, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (rxLocation.usePlayServicesClients()) {
+            return rxLocation.playServicesClients.checkAndHandleResolution(locationSettingsRequest, timeoutTime, timeoutUnit);
+        }
+
         return Single.create(new SettingsCheckHandleSingleOnSubscribe(rxLocation, locationSettingsRequest, timeoutTime, timeoutUnit));
     }
 
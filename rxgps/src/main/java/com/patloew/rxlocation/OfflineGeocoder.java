@@ -0,0 +1,394 @@
+package com.patloew.rxlocation;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Reverse geocoder working from a local place dataset, without network. Places are loaded
+ * from a tab separated file, either in the GeoNames dump format (geonameid, name, asciiname,
+ * alternatenames, latitude, longitude, feature class, feature code, country code, cc2,
+ * admin1, admin2, ...) or as rows of name, latitude, longitude and optionally country code,
+ * admin area and sub admin area. Lines starting with '#' are ignored.
+ *
+ * A GeoNames dump only carries admin codes (e.g. "CA" and "037"): the admin area names come
+ * from the GeoNames admin1CodesASCII and admin2Codes tables when they are given, and are left
+ * out otherwise. The plain format carries the names itself.
+ *
+ * Places are stored as unit vectors on the sphere in a KD-tree laid out in primitive arrays:
+ * the node of a range is the place at its middle, its children the two halves around it.
+ * A lookup returns the nearest places as Addresses.
+ */
+public final class OfflineGeocoder {
+
+    private static final int GEONAMES_COLUMNS = 12;
+
+    private final int size;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final String[] names;
+    private final String[] countryCodes;
+    private final String[] adminAreas;
+    private final String[] subAdminAreas;
+
+    private OfflineGeocoder(Places places) {
+        this.size = places.size;
+        this.x = new float[size];
+        this.y = new float[size];
+        this.z = new float[size];
+        this.latitudes = new double[size];
+        this.longitudes = new double[size];
+        this.names = new String[size];
+        this.countryCodes = new String[size];
+        this.adminAreas = new String[size];
+        this.subAdminAreas = new String[size];
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        build(places, order, 0, size, 0);
+
+        for (int node = 0; node < size; node++) {
+            int place = order[node];
+            x[node] = places.x[place];
+            y[node] = places.y[place];
+            z[node] = places.z[place];
+            latitudes[node] = places.latitudes[place];
+            longitudes[node] = places.longitudes[place];
+            names[node] = places.names.get(place);
+            countryCodes[node] = places.countryCodes.get(place);
+            adminAreas[node] = places.adminAreas.get(place);
+            subAdminAreas[node] = places.subAdminAreas.get(place);
+        }
+    }
+
+    /* Reads the dataset and closes the stream. Malformed lines are skipped. */
+    public static OfflineGeocoder load(@NonNull InputStream inputStream) throws IOException {
+        return load(inputStream, null, null);
+    }
+
+    /* Reads a GeoNames dump along with the admin1CodesASCII and admin2Codes tables naming its
+     * admin codes, either of which can be null, and closes the streams.
+     */
+    public static OfflineGeocoder load(@NonNull InputStream inputStream, InputStream admin1Codes, InputStream admin2Codes) throws IOException {
+        Places places = new Places();
+
+        try (BufferedReader reader = reader(inputStream);
+             BufferedReader admin1Reader = admin1Codes != null ? reader(admin1Codes) : null;
+             BufferedReader admin2Reader = admin2Codes != null ? reader(admin2Codes) : null) {
+            readAdminNames(admin1Reader, places.admin1Names);
+            readAdminNames(admin2Reader, places.admin2Names);
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    places.parse(line.split("\t", -1));
+                }
+            }
+        }
+
+        return new OfflineGeocoder(places);
+    }
+
+    private static BufferedReader reader(InputStream inputStream) throws IOException {
+        return new BufferedReader(new InputStreamReader(inputStream, "UTF-8"), 64 * 1024);
+    }
+
+    /* Rows of the code tables are the dotted code ("US.CA", "US.CA.037"), then the name. */
+    private static void readAdminNames(BufferedReader reader, Map<String, String> names) throws IOException {
+        if (reader == null) {
+            return;
+        }
+
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            String[] columns = line.split("\t", -1);
+
+            if (columns.length >= 2 && !columns[0].isEmpty() && line.charAt(0) != '#') {
+                names.put(columns[0], columns[1]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /* Returns the maxResults places nearest to the coordinates, nearest first. */
+    public List<Address> getFromLocation(Locale locale, double latitude, double longitude, int maxResults) {
+        int count = Math.min(maxResults, size);
+
+        if (count <= 0) {
+            return new ArrayList<>(0);
+        }
+
+        Nearest nearest = new Nearest(count);
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        search(nearest, (float) (Math.cos(phi) * Math.cos(lambda)), (float) (Math.cos(phi) * Math.sin(lambda)), (float) Math.sin(phi), 0, size, 0);
+
+        Locale addressLocale = locale != null ? locale : Locale.getDefault();
+        List<Address> addresses = new ArrayList<>(nearest.count);
+
+        for (int i = 0; i < nearest.count; i++) {
+            addresses.add(toAddress(addressLocale, nearest.nodes[i]));
+        }
+
+        return addresses;
+    }
+
+    private Address toAddress(Locale locale, int node) {
+        Address address = new Address(locale);
+        address.setFeatureName(names[node]);
+        address.setLocality(names[node]);
+        address.setAdminArea(adminAreas[node]);
+        address.setSubAdminArea(subAdminAreas[node]);
+        address.setCountryCode(countryCodes[node]);
+        address.setLatitude(latitudes[node]);
+        address.setLongitude(longitudes[node]);
+
+        StringBuilder line = new StringBuilder(names[node]);
+
+        if (adminAreas[node] != null) {
+            line.append(", ").append(adminAreas[node]);
+        }
+
+        if (countryCodes[node] != null) {
+            String countryName = new Locale("", countryCodes[node]).getDisplayCountry(locale);
+            address.setCountryName(countryName);
+            line.append(", ").append(countryName);
+        }
+
+        address.setAddressLine(0, line.toString());
+
+        return address;
+    }
+
+    private void search(Nearest nearest, float qx, float qy, float qz, int from, int to, int axis) {
+        if (from >= to) {
+            return;
+        }
+
+        int node = (from + to) >>> 1;
+
+        float dx = x[node] - qx;
+        float dy = y[node] - qy;
+        float dz = z[node] - qz;
+        nearest.offer(node, dx * dx + dy * dy + dz * dz);
+
+        float delta = axis == 0 ? -dx : (axis == 1 ? -dy : -dz);
+        int nextAxis = (axis + 1) % 3;
+
+        if (delta < 0) {
+            search(nearest, qx, qy, qz, from, node, nextAxis);
+            if (delta * delta < nearest.worst()) {
+                search(nearest, qx, qy, qz, node + 1, to, nextAxis);
+            }
+        } else {
+            search(nearest, qx, qy, qz, node + 1, to, nextAxis);
+            if (delta * delta < nearest.worst()) {
+                search(nearest, qx, qy, qz, from, node, nextAxis);
+            }
+        }
+    }
+
+    /* Partitions order[from, to) around its median on the axis, then recurses on both halves. */
+    private static void build(Places places, int[] order, int from, int to, int axis) {
+        if (to - from <= 1) {
+            return;
+        }
+
+        int median = (from + to) >>> 1;
+        float[] coordinates = axis == 0 ? places.x : (axis == 1 ? places.y : places.z);
+        select(coordinates, order, from, to - 1, median);
+
+        int nextAxis = (axis + 1) % 3;
+        build(places, order, from, median, nextAxis);
+        build(places, order, median + 1, to, nextAxis);
+    }
+
+    private static void select(float[] coordinates, int[] order, int left, int right, int k) {
+        while (right > left) {
+            float pivot = coordinates[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+
+            while (i <= j) {
+                while (coordinates[order[i]] < pivot) i++;
+                while (coordinates[order[j]] > pivot) j--;
+
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /* The best candidates found so far, sorted by distance. */
+    private static class Nearest {
+
+        final int[] nodes;
+        final float[] distances;
+        int count;
+
+        Nearest(int capacity) {
+            this.nodes = new int[capacity];
+            this.distances = new float[capacity];
+        }
+
+        float worst() {
+            return count < nodes.length ? Float.MAX_VALUE : distances[count - 1];
+        }
+
+        void offer(int node, float distance) {
+            if (distance >= worst()) {
+                return;
+            }
+
+            int i = count < nodes.length ? count++ : count - 1;
+
+            while (i > 0 && distances[i - 1] > distance) {
+                nodes[i] = nodes[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+    }
+
+    /* Growable columns used while loading. */
+    private static class Places {
+
+        private final Map<String, String> strings = new HashMap<>();
+        final Map<String, String> admin1Names = new HashMap<>();
+        final Map<String, String> admin2Names = new HashMap<>();
+
+        int size;
+        float[] x = new float[1024];
+        float[] y = new float[1024];
+        float[] z = new float[1024];
+        double[] latitudes = new double[1024];
+        double[] longitudes = new double[1024];
+        final List<String> names = new ArrayList<>();
+        final List<String> countryCodes = new ArrayList<>();
+        final List<String> adminAreas = new ArrayList<>();
+        final List<String> subAdminAreas = new ArrayList<>();
+
+        void parse(String[] columns) {
+            boolean geoNames = columns.length >= GEONAMES_COLUMNS;
+
+            if (!geoNames && columns.length < 3) {
+                return;
+            }
+
+            double latitude;
+            double longitude;
+
+            try {
+                latitude = Double.parseDouble(columns[geoNames ? 4 : 1]);
+                longitude = Double.parseDouble(columns[geoNames ? 5 : 2]);
+            } catch (NumberFormatException e) {
+                return;
+            }
+
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                return;
+            }
+
+            if (geoNames) {
+                String admin1Code = columns[8] + "." + columns[10];
+                add(columns[1], latitude, longitude, columns[8], admin1Names.get(admin1Code), admin2Names.get(admin1Code + "." + columns[11]));
+            } else {
+                add(columns[0], latitude, longitude,
+                        columns.length > 3 ? columns[3] : null,
+                        columns.length > 4 ? columns[4] : null,
+                        columns.length > 5 ? columns[5] : null);
+            }
+        }
+
+        private void add(String name, double latitude, double longitude, String countryCode, String adminArea, String subAdminArea) {
+            if (size == x.length) {
+                int capacity = size * 2;
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+
+            double phi = Math.toRadians(latitude);
+            double lambda = Math.toRadians(longitude);
+            x[size] = (float) (Math.cos(phi) * Math.cos(lambda));
+            y[size] = (float) (Math.cos(phi) * Math.sin(lambda));
+            z[size] = (float) Math.sin(phi);
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+
+            names.add(name);
+            countryCodes.add(intern(countryCode));
+            adminAreas.add(intern(adminArea));
+            subAdminAreas.add(intern(subAdminArea));
+            size++;
+        }
+
+        /* Admin names and country codes repeat across many places: keep one instance of each. */
+        private String intern(String value) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+
+            String interned = strings.get(value);
+
+            if (interned == null) {
+                strings.put(value, value);
+                interned = value;
+            }
+
+            return interned;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.patloew.rxlocation;
+
+import android.app.PendingIntent;
+import android.location.Location;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.android.gms.common.api.ResolvableApiException;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.ActivityRecognition;
+import com.google.android.gms.location.ActivityRecognitionClient;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.GeofencingClient;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.LocationSettingsRequest;
+import com.google.android.gms.location.LocationSettingsResponse;
+import com.google.android.gms.location.LocationSettingsResult;
+import com.google.android.gms.location.SettingsClient;
+import com.google.android.gms.tasks.Task;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Engine based on the Tasks API clients (FusedLocationProviderClient, GeofencingClient,
+ * ActivityRecognitionClient and SettingsClient), which need no GoogleApiClient connection.
+ * Failed tasks are reported as StatusException, like the GoogleApiClient engine does.
+ */
+class PlayServicesClients {
+
+    private final RxLocation rxLocation;
+
+    private FusedLocationProviderClient fusedLocationClient;
+    private GeofencingClient geofencingClient;
+    private ActivityRecognitionClient activityRecognitionClient;
+    private SettingsClient settingsClient;
+
+    PlayServicesClients(@NonNull RxLocation rxLocation) {
+        this.rxLocation = rxLocation;
+    }
+
+    synchronized FusedLocationProviderClient fusedLocationClient() {
+        if (fusedLocationClient == null) {
+            fusedLocationClient = LocationServices.getFusedLocationProviderClient(rxLocation.ctx);
+        }
+        return fusedLocationClient;
+    }
+
+    synchronized GeofencingClient geofencingClient() {
+        if (geofencingClient == null) {
+            geofencingClient = LocationServices.getGeofencingClient(rxLocation.ctx);
+        }
+        return geofencingClient;
+    }
+
+    synchronized ActivityRecognitionClient activityRecognitionClient() {
+        if (activityRecognitionClient == null) {
+            activityRecognitionClient = ActivityRecognition.getClient(rxLocation.ctx);
+        }
+        return activityRecognitionClient;
+    }
+
+    synchronized SettingsClient settingsClient() {
+        if (settingsClient == null) {
+            settingsClient = LocationServices.getSettingsClient(rxLocation.ctx);
+        }
+        return settingsClient;
+    }
+
+
+    // Fused Location
+
+    Single<Status> flush(Long timeoutTime, TimeUnit timeoutUnit) {
+        return status(() -> fusedLocationClient().flushLocations(), timeoutTime, timeoutUnit);
+    }
+
+    @SuppressWarnings("MissingPermission")
+    Maybe<Location> lastLocation() {
+        return Maybe.create(emitter ->
+                fusedLocationClient().getLastLocation().addOnCompleteListener(task -> {
+                    if (!task.isSuccessful()) {
+                        emitter.onError(toStatusException(task.getException()));
+                    } else if (task.getResult() != null) {
+                        emitter.onSuccess(task.getResult());
+                    } else {
+                        emitter.onComplete();
+                    }
+                })
+        );
+    }
+
+    @SuppressWarnings("MissingPermission")
+    Single<Boolean> isLocationAvailable() {
+        return Single.create(emitter ->
+                fusedLocationClient().getLocationAvailability().addOnCompleteListener(task -> {
+                    if (!task.isSuccessful()) {
+                        emitter.onError(toStatusException(task.getException()));
+                    } else {
+                        LocationAvailability locationAvailability = task.getResult();
+                        emitter.onSuccess(locationAvailability != null && locationAvailability.isLocationAvailable());
+                    }
+                })
+        );
+    }
+
+    /* As with the GoogleApiClient engine, the timeout applies to the registration of the
+     * updates, not to the time between two locations.
+     */
+    FlowableOnSubscribe<Location> locationUpdates(@NonNull LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit) {
+        return new LocationCallbackUpdatesOnSubscribe(fusedLocationClient(), locationRequest, looper, rxLocation.timeoutMillis(timeoutTime, timeoutUnit));
+    }
+
+    FlowableOnSubscribe<List<Location>> locationBatchUpdates(@NonNull LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit) {
+        return new LocationCallbackBatchUpdatesOnSubscribe(fusedLocationClient(), locationRequest, looper, rxLocation.timeoutMillis(timeoutTime, timeoutUnit));
+    }
+
+    @SuppressWarnings("MissingPermission")
+    Single<Status> requestUpdates(LocationRequest locationRequest, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        return status(() -> fusedLocationClient().requestLocationUpdates(locationRequest, pendingIntent), timeoutTime, timeoutUnit);
+    }
+
+    Single<Status> removeUpdates(PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        return status(() -> fusedLocationClient().removeLocationUpdates(pendingIntent), timeoutTime, timeoutUnit);
+    }
+
+
+    // Geofencing
+
+    @SuppressWarnings("MissingPermission")
+    Single<Status> addGeofences(GeofencingRequest geofencingRequest, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        return status(() -> geofencingClient().addGeofences(geofencingRequest, pendingIntent), timeoutTime, timeoutUnit);
+    }
+
+    Single<Status> removeGeofences(List<String> geofenceRequestIds, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (geofenceRequestIds != null) {
+            return status(() -> geofencingClient().removeGeofences(geofenceRequestIds), timeoutTime, timeoutUnit);
+        } else {
+            return status(() -> geofencingClient().removeGeofences(pendingIntent), timeoutTime, timeoutUnit);
+        }
+    }
+
+
+    // Activity Recognition
+
+    Single<Status> requestActivityUpdates(long detectionIntervalMillis, PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        return status(() -> activityRecognitionClient().requestActivityUpdates(detectionIntervalMillis, pendingIntent), timeoutTime, timeoutUnit);
+    }
+
+    Single<Status> removeActivityUpdates(PendingIntent pendingIntent, Long timeoutTime, TimeUnit timeoutUnit) {
+        return status(() -> activityRecognitionClient().removeActivityUpdates(pendingIntent), timeoutTime, timeoutUnit);
+    }
+
+
+    // Location Settings
+
+    Single<LocationSettingsResult> checkLocationSettings(LocationSettingsRequest locationSettingsRequest, Long timeoutTime, TimeUnit timeoutUnit) {
+        return withTimeout(Single.create(emitter ->
+                settingsClient().checkLocationSettings(locationSettingsRequest).addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        LocationSettingsResponse response = task.getResult();
+                        emitter.onSuccess(new LocationSettingsResult(new Status(CommonStatusCodes.SUCCESS), response.getLocationSettingsStates()));
+                    } else {
+                        emitter.onError(new StatusException(new LocationSettingsResult(toStatus(task.getException()), null)));
+                    }
+                })
+        ), timeoutTime, timeoutUnit);
+    }
+
+    Single<Boolean> checkAndHandleResolution(LocationSettingsRequest locationSettingsRequest, Long timeoutTime, TimeUnit timeoutUnit) {
+        return withTimeout(Single.create(emitter ->
+                settingsClient().checkLocationSettings(locationSettingsRequest).addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        emitter.onSuccess(true);
+                    } else if (task.getException() instanceof ApiException) {
+                        Status status = toStatus(task.getException());
+                        SettingsCheckHandleSingleOnSubscribe.handleStatus(rxLocation.ctx, status, status, emitter);
+                    } else {
+                        emitter.onError(toStatusException(task.getException()));
+                    }
+                })
+        ), timeoutTime, timeoutUnit);
+    }
+
+
+    private Single<Status> status(Callable<Task<Void>> taskCallable, Long timeoutTime, TimeUnit timeoutUnit) {
+        return withTimeout(Single.create(emitter ->
+                taskCallable.call().addOnCompleteListener(task -> {
+                    if (task.isSuccessful()) {
+                        emitter.onSuccess(new Status(CommonStatusCodes.SUCCESS));
+                    } else {
+                        emitter.onError(toStatusException(task.getException()));
+                    }
+                })
+        ), timeoutTime, timeoutUnit);
+    }
+
+    /* Applies the given timeout, or the default timeout of RxLocation. As with PendingResults,
+     * a timeout is reported as a StatusException with the TIMEOUT status code.
+     */
+    private <T> Single<T> withTimeout(Single<T> single, Long timeoutTime, TimeUnit timeoutUnit) {
+        if (timeoutTime == null || timeoutUnit == null) {
+            timeoutTime = rxLocation.timeoutTime;
+            timeoutUnit = rxLocation.timeoutUnit;
+        }
+
+        if (timeoutTime != null && timeoutUnit != null) {
+            return single.timeout(timeoutTime, timeoutUnit, Single.error(new StatusException(new Status(CommonStatusCodes.TIMEOUT))));
+        } else {
+            return single;
+        }
+    }
+
+    static Status toStatus(Exception exception) {
+        if (exception instanceof ResolvableApiException) {
+            ResolvableApiException resolvableApiException = (ResolvableApiException) exception;
+            return new Status(resolvableApiException.getStatusCode(), resolvableApiException.getMessage(), resolvableApiException.getResolution());
+        } else if (exception instanceof ApiException) {
+            return new Status(((ApiException) exception).getStatusCode(), exception.getMessage());
+        } else {
+            return new Status(CommonStatusCodes.ERROR, exception != null ? exception.getMessage() : null);
+        }
+    }
+
+    static Throwable toStatusException(Exception exception) {
+        if (exception instanceof ApiException) {
+            return new StatusException(toStatus(exception));
+        } else if (exception != null) {
+            return exception;
+        } else {
+            return new StatusException(new Status(CommonStatusCodes.ERROR));
+        }
+    }
+
+    abstract static class LocationCallbackFlowableOnSubscribe<T> implements FlowableOnSubscribe<T> {
+
+        final FusedLocationProviderClient fusedLocationClient;
+        final LocationRequest locationRequest;
+        final Looper looper;
+        final long timeoutMillis;
+
+        LocationCallbackFlowableOnSubscribe(FusedLocationProviderClient fusedLocationClient, LocationRequest locationRequest, Looper looper, long timeoutMillis) {
+            this.fusedLocationClient = fusedLocationClient;
+            this.locationRequest = locationRequest;
+            this.looper = looper;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        abstract void onLocationResult(LocationResult locationResult, FlowableEmitter<T> emitter);
+
+        @Override
+        @SuppressWarnings("MissingPermission")
+        public void subscribe(FlowableEmitter<T> emitter) throws Exception {
+            final LocationCallback locationCallback = new LocationCallback() {
+                @Override
+                public void onLocationResult(LocationResult locationResult) {
+                    LocationCallbackFlowableOnSubscribe.this.onLocationResult(locationResult, emitter);
+                }
+            };
+
+            // Without a Looper the client would deliver on the subscribing thread, which
+            // usually has none, so fall back to the main Looper like GoogleApiClient does.
+            final Task<Void> registration = fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, looper != null ? looper : Looper.getMainLooper());
+
+            final Disposable timeout = timeoutMillis > 0
+                    ? Schedulers.computation().scheduleDirect(() -> emitter.tryOnError(new StatusException(new Status(CommonStatusCodes.TIMEOUT))), timeoutMillis, TimeUnit.MILLISECONDS)
+                    : null;
+
+            registration.addOnCompleteListener(task -> {
+                if (timeout != null) {
+                    timeout.dispose();
+                }
+
+                if (!task.isSuccessful()) {
+                    emitter.tryOnError(toStatusException(task.getException()));
+                }
+            });
+
+            emitter.setCancellable(() -> {
+                if (timeout != null) {
+                    timeout.dispose();
+                }
+
+                fusedLocationClient.removeLocationUpdates(locationCallback);
+            });
+        }
+    }
+
+    static class LocationCallbackUpdatesOnSubscribe extends LocationCallbackFlowableOnSubscribe<Location> {
+
+        LocationCallbackUpdatesOnSubscribe(FusedLocationProviderClient fusedLocationClient, LocationRequest locationRequest, Looper looper, long timeoutMillis) {
+            super(fusedLocationClient, locationRequest, looper, timeoutMillis);
+        }
+
+        @Override
+        void onLocationResult(LocationResult locationResult, FlowableEmitter<Location> emitter) {
+            for (Location location : locationResult.getLocations()) {
+                emitter.onNext(location);
+            }
+        }
+    }
+
+    static class LocationCallbackBatchUpdatesOnSubscribe extends LocationCallbackFlowableOnSubscribe<List<Location>> {
+
+        LocationCallbackBatchUpdatesOnSubscribe(FusedLocationProviderClient fusedLocationClient, LocationRequest locationRequest, Looper looper, long timeoutMillis) {
+            super(fusedLocationClient, locationRequest, looper, timeoutMillis);
+        }
+
+        @Override
+        void onLocationResult(LocationResult locationResult, FlowableEmitter<List<Location>> emitter) {
+            emitter.onNext(locationResult.getLocations());
+        }
+    }
+}
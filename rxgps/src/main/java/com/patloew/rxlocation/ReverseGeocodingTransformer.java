@@ -0,0 +1,144 @@
+package com.patloew.rxlocation;
+
+import android.location.Address;
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.Locale;
+
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Turns a stream of locations into a stream of addresses. A location is geocoded only once
+ * it is farther than radiusMeters from the location of the previous lookup; closer ones
+ * re-emit the address already resolved. A new lookup cancels the one still in flight,
+ * unless the new location is within the radius of the in-flight lookup, in which case it
+ * is skipped and the pending result is awaited instead. Lookups run on the Geocoding
+ * executor when one is set, and on Schedulers.io() otherwise, so the Geocoder never blocks
+ * the thread delivering the locations. A failed lookup, common when offline, emits nothing
+ * and does not end the stream: the next location outside the radius is looked up again.
+ */
+public final class ReverseGeocodingTransformer {
+
+    private ReverseGeocodingTransformer() { }
+
+    public static FlowableTransformer<Location, Address> forFlowable(@NonNull Geocoding geocoding, float radiusMeters) {
+        return forFlowable(geocoding, null, radiusMeters);
+    }
+
+    public static FlowableTransformer<Location, Address> forFlowable(@NonNull Geocoding geocoding, Locale locale, float radiusMeters) {
+        checkRadius(radiusMeters);
+
+        return upstream -> Flowable.defer(() -> {
+            State state = new State(geocoding, locale, radiusMeters);
+            return upstream
+                    .filter(state::needsEmission)
+                    .switchMap(location -> state.address(location).toFlowable());
+        });
+    }
+
+    public static ObservableTransformer<Location, Address> forObservable(@NonNull Geocoding geocoding, float radiusMeters) {
+        return forObservable(geocoding, null, radiusMeters);
+    }
+
+    public static ObservableTransformer<Location, Address> forObservable(@NonNull Geocoding geocoding, Locale locale, float radiusMeters) {
+        checkRadius(radiusMeters);
+
+        return upstream -> Observable.defer(() -> {
+            State state = new State(geocoding, locale, radiusMeters);
+            return upstream
+                    .filter(state::needsEmission)
+                    .switchMap(location -> state.address(location).toObservable());
+        });
+    }
+
+    private static void checkRadius(float radiusMeters) {
+        if (radiusMeters < 0) {
+            throw new IllegalArgumentException("radiusMeters must not be negative");
+        }
+    }
+
+    private static class State {
+
+        final Geocoding geocoding;
+        final Locale locale;
+        final float radiusMeters;
+
+        private boolean resolved;
+        private double resolvedLatitude;
+        private double resolvedLongitude;
+        private Address resolvedAddress;
+
+        private Location pending;
+
+        State(Geocoding geocoding, Locale locale, float radiusMeters) {
+            this.geocoding = geocoding;
+            this.locale = locale;
+            this.radiusMeters = radiusMeters;
+        }
+
+        synchronized boolean needsEmission(Location location) {
+            return pending == null || isOutside(location, pending.getLatitude(), pending.getLongitude());
+        }
+
+        synchronized Maybe<Address> address(Location location) {
+            if (resolved && !isOutside(location, resolvedLatitude, resolvedLongitude)) {
+                return resolvedAddress != null ? Maybe.just(resolvedAddress) : Maybe.empty();
+            }
+
+            pending = location;
+
+            Single<List<Address>> lookup = geocoding.fromLocation(locale, location.getLatitude(), location.getLongitude(), 1);
+
+            if (!geocoding.hasExecutor()) {
+                lookup = lookup.subscribeOn(Schedulers.io());
+            }
+
+            return lookup
+                    .flatMapMaybe(addresses -> {
+                        Address address = addresses.isEmpty() ? null : addresses.get(0);
+                        onResolved(location, address);
+                        return address != null ? Maybe.just(address) : Maybe.<Address>empty();
+                    })
+                    .onErrorComplete()
+                    .doFinally(() -> clearPending(location));
+        }
+
+        private synchronized void onResolved(Location location, Address address) {
+            resolved = true;
+            resolvedLatitude = location.getLatitude();
+            resolvedLongitude = location.getLongitude();
+            resolvedAddress = address;
+        }
+
+        private synchronized void clearPending(Location location) {
+            if (pending == location) {
+                pending = null;
+            }
+        }
+
+        private boolean isOutside(Location location, double latitude, double longitude) {
+            return GeoMath.distance(latitude, longitude, location.getLatitude(), location.getLongitude()) > radiusMeters;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.patloew.rxlocation;
 
 import android.content.Context;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
 import android.support.annotation.NonNull;
 
 import java.util.concurrent.TimeUnit;
@@ -27,6 +30,9 @@ import java.util.concurrent.TimeUnit;
 public class RxLocation {
 
     final Context ctx;
+    final GoogleApiClientPool apiClientPool;
+    final PlayServicesClients playServicesClients;
+    final LastLocationStore lastLocationStore;
     private final ActivityRecognition activityRecognition = new ActivityRecognition(this);
     private final FusedLocation fusedLocation = new FusedLocation(this);
     private final Geocoding geocoding;
@@ -34,6 +40,10 @@ public class RxLocation {
     private final LocationSettings locationSettings = new LocationSettings(this);
     Long timeoutTime = null;
     TimeUnit timeoutUnit = null;
+    volatile boolean coalesceLocationRequests = false;
+    volatile Engine engine = Engine.GOOGLE_API_CLIENT;
+    volatile boolean useLocationThread = false;
+    private HandlerThread locationThread;
 
 
     /* Creates a new RxLocation instance.
@@ -42,6 +52,9 @@ public class RxLocation {
      */
     public RxLocation(@NonNull Context ctx) {
         this.ctx = ctx.getApplicationContext();
+        this.apiClientPool = new GoogleApiClientPool(this.ctx);
+        this.playServicesClients = new PlayServicesClients(this);
+        this.lastLocationStore = LastLocationStore.get(this.ctx);
         this.geocoding = new Geocoding(ctx.getApplicationContext());
     }
 
@@ -64,6 +77,74 @@ public class RxLocation {
         timeoutUnit = null;
     }
 
+    /* The given timeout, or the default timeout, in milliseconds; 0 for none. */
+    long timeoutMillis(Long timeoutTime, TimeUnit timeoutUnit) {
+        if (timeoutTime == null || timeoutUnit == null) {
+            timeoutTime = this.timeoutTime;
+            timeoutUnit = this.timeoutUnit;
+        }
+
+        return timeoutTime != null && timeoutUnit != null ? timeoutUnit.toMillis(timeoutTime) : 0;
+    }
+
+    /* Set how long the shared GoogleApiClient is kept connected after the last request
+     * using it has finished. A time of 0 disconnects it immediately.
+     */
+    public void setConnectionLinger(long time, @NonNull TimeUnit timeUnit) {
+        if (timeUnit != null) {
+            apiClientPool.setLinger(time, timeUnit);
+        } else {
+            throw new IllegalArgumentException("timeUnit parameter must not be null");
+        }
+    }
+
+    /* Select the engine used for the requests made after this call. GOOGLE_API_CLIENT connects
+     * a (shared) GoogleApiClient before each request. PLAY_SERVICES_CLIENTS uses the Tasks based
+     * FusedLocationProviderClient, GeofencingClient, ActivityRecognitionClient and SettingsClient,
+     * which have no connection phase.
+     */
+    public void setEngine(@NonNull Engine engine) {
+        if (engine != null) {
+            this.engine = engine;
+        } else {
+            throw new IllegalArgumentException("engine parameter must not be null");
+        }
+    }
+
+    boolean usePlayServicesClients() {
+        return engine == Engine.PLAY_SERVICES_CLIENTS;
+    }
+
+    /* Deliver the location updates requested without a Looper on a background thread owned
+     * by RxLocation instead of the thread of the GoogleApiClient (usually the main thread).
+     * The thread is started on first use and shared by all the registrations.
+     */
+    public void setLocationThreadEnabled(boolean enabled) {
+        useLocationThread = enabled;
+    }
+
+    synchronized Looper getLocationLooper() {
+        if (locationThread == null) {
+            locationThread = new HandlerThread("RxLocation", Process.THREAD_PRIORITY_BACKGROUND);
+            locationThread.start();
+        }
+
+        return locationThread.getLooper();
+    }
+
+    Looper getDefaultLooper() {
+        return useLocationThread ? getLocationLooper() : null;
+    }
+
+    /* Enable or disable coalescing of location update requests. When enabled, the continuous
+     * requests of all the subscribers of location().updates() without a Looper or timeout are
+     * merged into a single registration with the strictest priority and shortest interval,
+     * and each subscriber receives the locations decimated to its own request.
+     */
+    public void setLocationRequestCoalescing(boolean enabled) {
+        coalesceLocationRequests = enabled;
+    }
+
 
     public ActivityRecognition activity() {
         return activityRecognition;
@@ -81,8 +162,18 @@ public class RxLocation {
         return fusedLocation;
     }
 
+    /* The newest location seen by any instance in this process. */
+    public LastLocationStore lastLocationStore() {
+        return lastLocationStore;
+    }
+
     public LocationSettings settings() {
         return locationSettings;
     }
 
+    public enum Engine {
+        GOOGLE_API_CLIENT,
+        PLAY_SERVICES_CLIENTS
+    }
+
 }
@@ -1,6 +1,7 @@
 package com.patloew.rxlocation;
 
 import android.content.Context;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 
 import com.google.android.gms.common.api.Api;
@@ -38,11 +39,13 @@ abstract class RxLocationBaseOnSubscribe<T> {
     final TimeUnit timeoutUnit;
     private final Api<? extends Api.ApiOptions.NotRequiredOptions>[] services;
     private final Scope[] scopes;
+    private final GoogleApiClientPool apiClientPool;
 
     protected RxLocationBaseOnSubscribe(@NonNull RxLocation rxLocation, Long timeout, TimeUnit timeUnit) {
         this.ctx = rxLocation.ctx;
         this.services = new Api[]{ LocationServices.API, ActivityRecognition.API };
         this.scopes = null;
+        this.apiClientPool = rxLocation.apiClientPool;
 
         if (timeout != null && timeUnit != null) {
             this.timeoutTime = timeout;
@@ -57,6 +60,7 @@ abstract class RxLocationBaseOnSubscribe<T> {
         this.ctx = ctx;
         this.services = services;
         this.scopes = scopes;
+        this.apiClientPool = null;
         timeoutTime = null;
         timeoutUnit = null;
     }
@@ -98,19 +102,67 @@ abstract class RxLocationBaseOnSubscribe<T> {
         return apiClient;
     }
 
+    /* Connects the callbacks to a GoogleApiClient. Requests created from a RxLocation
+     * share its pooled client, the others get a client of their own.
+     */
+    protected final void connect(ApiClientConnectionCallbacks apiClientConnectionCallbacks) {
+        if (apiClientPool != null) {
+            apiClientPool.acquire(apiClientConnectionCallbacks);
+        } else {
+            createApiClient(apiClientConnectionCallbacks).connect();
+        }
+    }
+
+    protected final void disconnect(ApiClientConnectionCallbacks apiClientConnectionCallbacks) {
+        GoogleApiClient apiClient = apiClientConnectionCallbacks.apiClient;
+
+        // Only callbacks that were made ready have something registered to undo
+        if (apiClientConnectionCallbacks.release() && apiClient != null && apiClient.isConnected()) {
+            onUnsubscribed(apiClient);
+        }
+
+        if (apiClientPool != null) {
+            apiClientPool.release(apiClientConnectionCallbacks);
+        } else if (apiClient != null) {
+            apiClient.disconnect();
+        }
+    }
+
     protected void onUnsubscribed(GoogleApiClient apiClient) { }
 
-    protected abstract class ApiClientConnectionCallbacks implements
-            GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener {
+    protected abstract class ApiClientConnectionCallbacks implements GoogleApiClientPool.Callbacks {
 
         protected GoogleApiClient apiClient;
 
+        private boolean ready;
+        private boolean released;
+
         protected ApiClientConnectionCallbacks() {
         }
 
         public void setClient(GoogleApiClient client) {
             this.apiClient = client;
         }
+
+        /* Holds the lock while the subscriber is made ready, so release() either prevents it
+         * or waits for it to be done.
+         */
+        @Override
+        public final synchronized void onConnected(Bundle bundle) {
+            if (released) {
+                return;
+            }
+
+            ready = true;
+            onClientConnected(bundle);
+        }
+
+        protected abstract void onClientConnected(Bundle bundle);
+
+        /* Returns whether the subscriber had been made ready. */
+        final synchronized boolean release() {
+            released = true;
+            return ready;
+        }
     }
 }
@@ -45,21 +45,15 @@ abstract class RxLocationFlowableOnSubscribe<T> extends RxLocationBaseOnSubscrib
 
     @Override
     public final void subscribe(FlowableEmitter<T> emitter) throws Exception {
-        final GoogleApiClient apiClient = createApiClient(new ApiClientConnectionCallbacks(emitter));
+        final ApiClientConnectionCallbacks apiClientConnectionCallbacks = new ApiClientConnectionCallbacks(emitter);
 
         try {
-            apiClient.connect();
+            connect(apiClientConnectionCallbacks);
         } catch (Throwable ex) {
             emitter.onError(ex);
         }
 
-        emitter.setCancellable(() -> {
-            if (apiClient.isConnected()) {
-                onUnsubscribed(apiClient);
-            }
-
-            apiClient.disconnect();
-        });
+        emitter.setCancellable(() -> disconnect(apiClientConnectionCallbacks));
     }
 
     protected abstract void onGoogleApiClientReady(GoogleApiClient apiClient, FlowableEmitter<T> emitter);
@@ -68,14 +62,12 @@ abstract class RxLocationFlowableOnSubscribe<T> extends RxLocationBaseOnSubscrib
 
         final protected FlowableEmitter<T> emitter;
 
-        private GoogleApiClient apiClient;
-
         private ApiClientConnectionCallbacks(FlowableEmitter<T> emitter) {
             this.emitter = emitter;
         }
 
         @Override
-        public void onConnected(Bundle bundle) {
+        protected void onClientConnected(Bundle bundle) {
             try {
                 onGoogleApiClientReady(apiClient, emitter);
             } catch (Throwable ex) {
@@ -92,9 +84,5 @@ abstract class RxLocationFlowableOnSubscribe<T> extends RxLocationBaseOnSubscrib
         public void onConnectionFailed(ConnectionResult connectionResult) {
             emitter.onError(new GoogleApiConnectionException("Error connecting to GoogleApiClient.", connectionResult));
         }
-
-        public void setClient(GoogleApiClient client) {
-            this.apiClient = client;
-        }
     }
 }
@@ -44,21 +44,15 @@ abstract class RxLocationMaybeOnSubscribe<T> extends RxLocationBaseOnSubscribe<T
 
     @Override
     public final void subscribe(MaybeEmitter<T> emitter) throws Exception {
-        final GoogleApiClient apiClient = createApiClient(new ApiClientConnectionCallbacks(emitter));
+        final ApiClientConnectionCallbacks apiClientConnectionCallbacks = new ApiClientConnectionCallbacks(emitter);
 
         try {
-            apiClient.connect();
+            connect(apiClientConnectionCallbacks);
         } catch (Throwable ex) {
             emitter.onError(ex);
         }
 
-        emitter.setCancellable(() -> {
-            if (apiClient.isConnected()) {
-                onUnsubscribed(apiClient);
-            }
-
-            apiClient.disconnect();
-        });
+        emitter.setCancellable(() -> disconnect(apiClientConnectionCallbacks));
     }
 
     protected abstract void onGoogleApiClientReady(GoogleApiClient apiClient, MaybeEmitter<T> emitter);
@@ -67,14 +61,12 @@ abstract class RxLocationMaybeOnSubscribe<T> extends RxLocationBaseOnSubscribe<T
 
         final protected MaybeEmitter<T> emitter;
 
-        private GoogleApiClient apiClient;
-
         private ApiClientConnectionCallbacks(MaybeEmitter<T> emitter) {
             this.emitter = emitter;
         }
 
         @Override
-        public void onConnected(Bundle bundle) {
+        protected void onClientConnected(Bundle bundle) {
             try {
                 onGoogleApiClientReady(apiClient, emitter);
             } catch (Throwable ex) {
@@ -91,9 +83,5 @@ abstract class RxLocationMaybeOnSubscribe<T> extends RxLocationBaseOnSubscribe<T
         public void onConnectionFailed(ConnectionResult connectionResult) {
             emitter.onError(new GoogleApiConnectionException("Error connecting to GoogleApiClient.", connectionResult));
         }
-
-        public void setClient(GoogleApiClient client) {
-            this.apiClient = client;
-        }
     }
 }
@@ -44,21 +44,15 @@ abstract class RxLocationSingleOnSubscribe<T> extends RxLocationBaseOnSubscribe<
 
     @Override
     public final void subscribe(SingleEmitter<T> emitter) throws Exception {
-        final GoogleApiClient apiClient = createApiClient(new ApiClientConnectionCallbacks(emitter));
+        final ApiClientConnectionCallbacks apiClientConnectionCallbacks = new ApiClientConnectionCallbacks(emitter);
 
         try {
-            apiClient.connect();
+            connect(apiClientConnectionCallbacks);
         } catch (Throwable ex) {
             emitter.onError(ex);
         }
 
-        emitter.setCancellable(() -> {
-            if (apiClient.isConnected()) {
-                onUnsubscribed(apiClient);
-            }
-
-            apiClient.disconnect();
-        });
+        emitter.setCancellable(() -> disconnect(apiClientConnectionCallbacks));
     }
 
     protected abstract void onGoogleApiClientReady(GoogleApiClient apiClient, SingleEmitter<T> emitter);
@@ -67,14 +61,12 @@ abstract class RxLocationSingleOnSubscribe<T> extends RxLocationBaseOnSubscribe<
 
         final protected SingleEmitter<T> emitter;
 
-        private GoogleApiClient apiClient;
-
         private ApiClientConnectionCallbacks(SingleEmitter<T> emitter) {
             this.emitter = emitter;
         }
 
         @Override
-        public void onConnected(Bundle bundle) {
+        protected void onClientConnected(Bundle bundle) {
             try {
                 onGoogleApiClientReady(apiClient, emitter);
             } catch (Throwable ex) {
@@ -91,9 +83,5 @@ abstract class RxLocationSingleOnSubscribe<T> extends RxLocationBaseOnSubscribe<
         public void onConnectionFailed(ConnectionResult connectionResult) {
             emitter.onError(new GoogleApiConnectionException("Error connecting to GoogleApiClient.", connectionResult));
         }
-
-        public void setClient(GoogleApiClient client) {
-            this.apiClient = client;
-        }
     }
 }
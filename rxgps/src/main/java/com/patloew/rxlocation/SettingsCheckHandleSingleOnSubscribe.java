@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.Intent;
 
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.Result;
 import com.google.android.gms.common.api.Status;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
@@ -34,11 +35,10 @@ import io.reactivex.SingleEmitter;
  * limitations under the License. */
 class SettingsCheckHandleSingleOnSubscribe extends RxLocationSingleOnSubscribe<Boolean> {
 
-    static final Map<String, WeakReference<SettingsCheckHandleSingleOnSubscribe>> observableMap = new HashMap<>();
+    static final Map<String, WeakReference<SingleEmitter<Boolean>>> observableMap = new HashMap<>();
 
     final Context context;
     final LocationSettingsRequest locationSettingsRequest;
-    private WeakReference<SingleEmitter<Boolean>> emitterWeakRef;
 
     SettingsCheckHandleSingleOnSubscribe(RxLocation rxLocation, LocationSettingsRequest locationSettingsRequest, Long timeoutTime, TimeUnit timeoutUnit) {
         super(rxLocation, timeoutTime, timeoutUnit);
@@ -48,14 +48,10 @@ class SettingsCheckHandleSingleOnSubscribe extends RxLocationSingleOnSubscribe<B
 
     static void onResolutionResult(String observableId, int resultCode) {
         if (observableMap.containsKey(observableId)) {
-            SettingsCheckHandleSingleOnSubscribe observable = observableMap.get(observableId).get();
+            SingleEmitter<Boolean> observer = observableMap.get(observableId).get();
 
-            if (observable != null && observable.emitterWeakRef != null) {
-                SingleEmitter<Boolean> observer = observable.emitterWeakRef.get();
-
-                if (observer != null) {
-                    observer.onSuccess(resultCode == Activity.RESULT_OK);
-                }
+            if (observer != null) {
+                observer.onSuccess(resultCode == Activity.RESULT_OK);
             }
 
             observableMap.remove(observableId);
@@ -66,62 +62,64 @@ class SettingsCheckHandleSingleOnSubscribe extends RxLocationSingleOnSubscribe<B
 
     static void observableMapCleanup() {
         if(!observableMap.isEmpty()) {
-            Iterator<Map.Entry<String, WeakReference<SettingsCheckHandleSingleOnSubscribe>>> it = observableMap.entrySet().iterator();
+            Iterator<Map.Entry<String, WeakReference<SingleEmitter<Boolean>>>> it = observableMap.entrySet().iterator();
 
             while(it.hasNext()) {
-                Map.Entry<String, WeakReference<SettingsCheckHandleSingleOnSubscribe>> entry = it.next();
+                Map.Entry<String, WeakReference<SingleEmitter<Boolean>>> entry = it.next();
                 if(entry.getValue().get() == null) { it.remove(); }
             }
         }
     }
 
+    /* Handles the status of a settings check, shared by the GoogleApiClient and the
+     * SettingsClient based checks. The result is used for the StatusException of
+     * unexpected status codes.
+     */
+    static void handleStatus(Context context, Status status, Result result, SingleEmitter<Boolean> emitter) {
+        switch (status.getStatusCode()) {
+            case LocationSettingsStatusCodes.SUCCESS:
+                // All location settings are satisfied. The client can initialize location
+                // requests here.
+                emitter.onSuccess(true);
+                break;
+
+            case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
+                // Location settings are not satisfied. But could be fixed by showing the user
+                // a dialog.
+
+                if (context != null) {
+                    String observableId = UUID.randomUUID().toString();
+                    observableMap.put(observableId, new WeakReference<>(emitter));
+
+                    Intent intent = new Intent(context, LocationSettingsActivity.class);
+                    intent.putExtra(LocationSettingsActivity.ARG_STATUS, status);
+                    intent.putExtra(LocationSettingsActivity.ARG_ID, observableId);
+                    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                    context.startActivity(intent);
+                } else {
+                    emitter.onSuccess(false);
+                }
+
+                break;
+
+            case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
+                // Location settings are not satisfied. However, we have no way to fix the
+                // settings so we won't show the dialog.
+
+                emitter.onSuccess(false);
+                break;
+
+            default:
+                emitter.onError(new StatusException(result));
+                break;
+        }
+    }
+
     @Override
     protected void onGoogleApiClientReady(GoogleApiClient apiClient, SingleEmitter<Boolean> emitter) {
-        emitterWeakRef = new WeakReference<>(emitter);
-
         setupLocationPendingResult(
                 LocationServices.SettingsApi.checkLocationSettings(apiClient, locationSettingsRequest),
-                result -> {
-                    Status status = result.getStatus();
-
-                    switch (status.getStatusCode()) {
-                        case LocationSettingsStatusCodes.SUCCESS:
-                            // All location settings are satisfied. The client can initialize location
-                            // requests here.
-                            emitter.onSuccess(true);
-                            break;
-
-                        case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
-                            // Location settings are not satisfied. But could be fixed by showing the user
-                            // a dialog.
-
-                            if (context != null) {
-                                String observableId = UUID.randomUUID().toString();
-                                observableMap.put(observableId, new WeakReference<>(SettingsCheckHandleSingleOnSubscribe.this));
-
-                                Intent intent = new Intent(context, LocationSettingsActivity.class);
-                                intent.putExtra(LocationSettingsActivity.ARG_STATUS, status);
-                                intent.putExtra(LocationSettingsActivity.ARG_ID, observableId);
-                                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                                context.startActivity(intent);
-                            } else {
-                                emitter.onSuccess(false);
-                            }
-
-                            break;
-
-                        case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
-                            // Location settings are not satisfied. However, we have no way to fix the
-                            // settings so we won't show the dialog.
-
-                            emitter.onSuccess(false);
-                            break;
-
-                        default:
-                            emitter.onError(new StatusException(result));
-                            break;
-                    }
-                }
+                result -> handleStatus(context, result.getStatus(), result, emitter)
         );
     }
 }
@@ -0,0 +1,149 @@
+package com.patloew.rxlocation;
+
+import android.location.Location;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * -----------------------------
+ *
+ * Multicasts location updates: all the subscribers of equal LocationRequests (and Looper
+ * and timeout) share one FusedLocationApi registration. The registration is removed when the last
+ * subscriber cancels, and late subscribers get the latest location replayed.
+ */
+class SharedLocationUpdates {
+
+    private final RxLocation rxLocation;
+    private final Map<Key, Flowable<Location>> sharedUpdates = new HashMap<>();
+
+    SharedLocationUpdates(@NonNull RxLocation rxLocation) {
+        this.rxLocation = rxLocation;
+    }
+
+    Flowable<Location> updates(@NonNull LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit, BackpressureStrategy backpressureStrategy) {
+        return Flowable.defer(() -> get(new Key(locationRequest, looper, rxLocation.timeoutMillis(timeoutTime, timeoutUnit)), locationRequest, looper, timeoutTime, timeoutUnit))
+                .compose(upstream -> applyBackpressure(upstream, backpressureStrategy));
+    }
+
+    private synchronized Flowable<Location> get(Key key, LocationRequest locationRequest, Looper looper, Long timeoutTime, TimeUnit timeoutUnit) {
+        Flowable<Location> shared = sharedUpdates.get(key);
+
+        if (shared == null) {
+            //noinspection unchecked
+            final Flowable<Location>[] holder = new Flowable[1];
+
+            shared = Flowable.create(rxLocation.location().locationUpdatesOnSubscribe(locationRequest, looper, timeoutTime, timeoutUnit), BackpressureStrategy.MISSING)
+                    .doOnNext(rxLocation.lastLocationStore::record)
+                    .doFinally(() -> remove(key, holder[0]))
+                    .replay(1)
+                    .refCount();
+
+            holder[0] = shared;
+            sharedUpdates.put(key, shared);
+        }
+
+        return shared;
+    }
+
+    private synchronized void remove(Key key, Flowable<Location> shared) {
+        if (sharedUpdates.get(key) == shared) {
+            sharedUpdates.remove(key);
+        }
+    }
+
+    static <T> Flowable<T> applyBackpressure(Flowable<T> upstream, BackpressureStrategy backpressureStrategy) {
+        switch (backpressureStrategy) {
+            case BUFFER:
+                return upstream.onBackpressureBuffer();
+            case DROP:
+                return upstream.onBackpressureDrop();
+            case LATEST:
+                return upstream.onBackpressureLatest();
+            case ERROR:
+                // Signals a MissingBackpressureException as soon as an item is not requested
+                return upstream.toObservable().toFlowable(BackpressureStrategy.ERROR);
+            default:
+                return upstream;
+        }
+    }
+
+    /* Snapshot of the LocationRequest parameters, as LocationRequest itself is mutable. The
+     * resolved timeout is part of the key: a registration timing out fails all its subscribers.
+     */
+    static final class Key {
+
+        final int priority;
+        final long interval;
+        final long fastestInterval;
+        final float smallestDisplacement;
+        final long maxWaitTime;
+        final int numUpdates;
+        final long expirationTime;
+        final Looper looper;
+        final long timeoutMillis;
+
+        Key(@NonNull LocationRequest locationRequest, Looper looper, long timeoutMillis) {
+            this.priority = locationRequest.getPriority();
+            this.interval = locationRequest.getInterval();
+            this.fastestInterval = locationRequest.getFastestInterval();
+            this.smallestDisplacement = locationRequest.getSmallestDisplacement();
+            this.maxWaitTime = locationRequest.getMaxWaitTime();
+            this.numUpdates = locationRequest.getNumUpdates();
+            this.expirationTime = locationRequest.getExpirationTime();
+            this.looper = looper;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+
+            return priority == key.priority
+                    && interval == key.interval
+                    && fastestInterval == key.fastestInterval
+                    && Float.compare(smallestDisplacement, key.smallestDisplacement) == 0
+                    && maxWaitTime == key.maxWaitTime
+                    && numUpdates == key.numUpdates
+                    && expirationTime == key.expirationTime
+                    && looper == key.looper
+                    && timeoutMillis == key.timeoutMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = priority;
+            result = 31 * result + (int) (interval ^ (interval >>> 32));
+            result = 31 * result + (int) (fastestInterval ^ (fastestInterval >>> 32));
+            result = 31 * result + Float.floatToIntBits(smallestDisplacement);
+            result = 31 * result + (int) (maxWaitTime ^ (maxWaitTime >>> 32));
+            result = 31 * result + numUpdates;
+            result = 31 * result + (int) (expirationTime ^ (expirationTime >>> 32));
+            result = 31 * result + (looper != null ? looper.hashCode() : 0);
+            result = 31 * result + (int) (timeoutMillis ^ (timeoutMillis >>> 32));
+            return result;
+        }
+    }
+}